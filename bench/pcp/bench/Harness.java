@@ -0,0 +1,88 @@
+/*
+ * pcp - The Producer of C++ Programs
+ * Copyright (C) 2011 Nabil Hassein, Thomas Huston, Mike Morreale, Marta Wilgan
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package pcp.bench;
+
+/**
+ * A small microbenchmark harness.  Each benchmark is run for a
+ * number of warmup iterations, so that the JIT compiler settles,
+ * and then for a number of measured iterations, reporting the
+ * mean, standard deviation, and minimum of the time per
+ * iteration.
+ *
+ * @author Nabil Hassein
+ * @author Thomas Huston
+ * @author Mike Morreale
+ * @author Marta Wilgan
+ *
+ * @version 2.1.1
+ */
+public abstract class Harness {
+
+  // Consumes the results so the work is not optimized away
+  private static long sink;
+
+
+  // ========================= Abstract Methods =====================
+
+  /**
+   * Prepares the state shared by all iterations.
+   */
+  public abstract void setUp() throws Exception;
+
+  /**
+   * Runs a single iteration of the benchmark.
+   *
+   * @return A value that depends on the work done.
+   */
+  public abstract long iterate() throws Exception;
+
+
+  // ============================ Run Methods =======================
+
+  /**
+   * Runs the benchmark and prints the time per iteration.
+   *
+   * @param name The name of the benchmark.
+   * @param warmup The number of warmup iterations.
+   * @param iterations The number of measured iterations.
+   */
+  public void run(String name, int warmup, int iterations) throws Exception {
+    setUp();
+    for (int i = 0; i < warmup; i++)
+      sink += iterate();
+    double[] times = new double[iterations];
+    double total = 0, min = Double.MAX_VALUE;
+    for (int i = 0; i < iterations; i++) {
+      long start = System.nanoTime();
+      sink += iterate();
+      times[i] = (System.nanoTime() - start) / 1e6;
+      total += times[i];
+      min = Math.min(min, times[i]);
+    }
+    double mean = total / iterations;
+    double variance = 0;
+    for (double t : times)
+      variance += (t - mean) * (t - mean);
+    double deviation = Math.sqrt(variance / Math.max(1, iterations - 1));
+    System.out.printf("%-24s %10.3f ms/op  +- %.3f  min %.3f  (%d iterations)%n",
+                      name, mean, deviation, min, iterations);
+    if (0 == sink)
+      System.out.print("");
+  }
+
+}
@@ -0,0 +1,150 @@
+/*
+ * pcp - The Producer of C++ Programs
+ * Copyright (C) 2011 Nabil Hassein, Thomas Huston, Mike Morreale, Marta Wilgan
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package pcp.bench;
+
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import pcp.translator.JavaClass;
+import pcp.translator.JavaFile;
+import pcp.translator.JavaMethod;
+
+import xtc.lang.JavaFiveParser;
+import xtc.parser.Result;
+import xtc.tree.GNode;
+import xtc.tree.Node;
+import xtc.tree.Printer;
+
+/**
+ * Measures finding the enclosing class of expressions in deeply
+ * nested blocks, by building and translating methods whose
+ * innermost statements declare locals, call methods, select
+ * fields, and create objects.
+ *
+ * <p>Usage: <code>NestingBenchmark [depth] [iterations]</code>
+ *
+ * @author Nabil Hassein
+ * @author Thomas Huston
+ * @author Mike Morreale
+ * @author Marta Wilgan
+ *
+ * @version 2.1.1
+ */
+public class NestingBenchmark extends Harness {
+
+  // The number of methods in the class
+  private static final int METHODS = 40;
+
+  // The number of statements in the innermost block
+  private static final int STATEMENTS = 16;
+
+  private int depth;
+  private JavaClass cls;
+  private List<GNode> nodes;
+  private Printer out;
+
+  /**
+   * Creates a new nesting benchmark.
+   *
+   * @param depth The depth of the nested blocks.
+   */
+  public NestingBenchmark(int depth) {
+    this.depth = depth;
+  }
+
+  /**
+   * Generates the source of a class whose methods nest blocks
+   * to the given depth.
+   *
+   * @return The source.
+   */
+  private String source() {
+    StringBuilder s = new StringBuilder();
+    s.append("public class Nested {\n");
+    s.append("  int count;\n");
+    s.append("  Nested next;\n");
+    s.append("  public int helper(int x) {\n    return x + count;\n  }\n");
+    for (int m = 0; m < METHODS; m++) {
+      s.append("  public int method").append(m).append("(int x) {\n");
+      s.append("    int total = 0;\n");
+      for (int d = 0; d < depth; d++) {
+        if (0 == d % 2)
+          s.append("    if (x > ").append(d).append(") {\n");
+        else
+          s.append("    for (int i").append(d).append(" = 0; i").append(d)
+           .append(" < x; i").append(d).append("++) {\n");
+      }
+      for (int k = 0; k < STATEMENTS; k++) {
+        s.append("      int v").append(k).append(" = helper(x) + this.count;\n");
+        s.append("      total = total + new Nested().helper(v").append(k)
+         .append(") + next.count;\n");
+      }
+      for (int d = 0; d < depth; d++)
+        s.append("    }\n");
+      s.append("    return total;\n  }\n");
+    }
+    s.append("}\n");
+    return s.toString();
+  }
+
+  public void setUp() throws Exception {
+    pcp.Translator.errConsole = new Printer(System.err);
+    String text = source();
+    JavaFiveParser parser =
+      new JavaFiveParser(new StringReader(text), "Nested.java", text.length());
+    Result result = parser.pCompilationUnit(0);
+    GNode unit = (GNode)parser.value(result);
+    cls = new JavaFile(unit).getPublicClass();
+    nodes = new ArrayList<GNode>();
+    for (Object o : unit) {
+      if (o instanceof Node && ((Node)o).hasName("ClassDeclaration")) {
+        for (Object m : ((Node)o).getNode(5)) {
+          if (m instanceof Node && ((Node)m).hasName("MethodDeclaration"))
+            nodes.add((GNode)m);
+        }
+      }
+    }
+    out = new Printer(OutputStream.nullOutputStream());
+  }
+
+  public long iterate() {
+    long n = 0;
+    for (GNode node : nodes) {
+      JavaMethod m = new JavaMethod(node, cls);
+      m.translate(out);
+      n += m.getName().length();
+    }
+    out.flush();
+    return n;
+  }
+
+  /**
+   * Runs the benchmark.
+   *
+   * @param args The depth of the blocks and measured iterations.
+   */
+  public static void main(String[] args) throws Exception {
+    int depth = 0 < args.length ? Integer.parseInt(args[0]) : 32;
+    int iterations = 1 < args.length ? Integer.parseInt(args[1]) : 20;
+    new NestingBenchmark(depth).run("scope.nesting(" + depth + ")",
+                                    iterations, iterations);
+  }
+
+}
@@ -0,0 +1,149 @@
+/*
+ * pcp - The Producer of C++ Programs
+ * Copyright (C) 2011 Nabil Hassein, Thomas Huston, Mike Morreale, Marta Wilgan
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package pcp.bench;
+
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import pcp.translator.JavaClass;
+import pcp.translator.JavaFile;
+import pcp.translator.JavaMethod;
+
+import xtc.lang.JavaFiveParser;
+import xtc.parser.Result;
+import xtc.tree.GNode;
+import xtc.tree.Node;
+import xtc.tree.Printer;
+
+/**
+ * Measures identifier resolution by building and translating
+ * methods that are dense with references to fields, parameters,
+ * and locals declared in nested blocks.
+ *
+ * <p>Usage: <code>ScopeBenchmark [methods] [iterations]</code>
+ *
+ * @author Nabil Hassein
+ * @author Thomas Huston
+ * @author Mike Morreale
+ * @author Marta Wilgan
+ *
+ * @version 2.1.1
+ */
+public class ScopeBenchmark extends Harness {
+
+  // The number of fields in the class
+  private static final int FIELDS = 32;
+
+  // The number of statements in each nested block
+  private static final int STATEMENTS = 12;
+
+  private int methods;
+  private JavaClass cls;
+  private List<GNode> nodes;
+  private Printer out;
+
+  /**
+   * Creates a new scope benchmark.
+   *
+   * @param methods The number of methods in the class.
+   */
+  public ScopeBenchmark(int methods) {
+    this.methods = methods;
+  }
+
+  /**
+   * Generates the source of a class whose methods refer to
+   * fields, parameters, and locals at every level of nesting.
+   *
+   * @return The source.
+   */
+  private String source() {
+    StringBuilder s = new StringBuilder();
+    s.append("public class Dense {\n");
+    for (int i = 0; i < FIELDS; i++)
+      s.append("  int field").append(i).append(";\n");
+    s.append("  static int shared;\n");
+    for (int m = 0; m < methods; m++) {
+      s.append("  public int method").append(m)
+       .append("(int a, int b, int c, int[] values) {\n");
+      s.append("    int total = a;\n");
+      for (int depth = 0; depth < 4; depth++) {
+        s.append("    for (int i").append(depth).append(" = 0; i").append(depth)
+         .append(" < values.length; i").append(depth).append("++) {\n");
+        s.append("      int local").append(depth).append(" = b + c;\n");
+        for (int k = 0; k < STATEMENTS; k++) {
+          int f = (m + depth * STATEMENTS + k) % FIELDS;
+          s.append("      total = total + field").append(f)
+           .append(" * local").append(depth)
+           .append(" + values[i").append(depth).append("] - shared;\n");
+        }
+      }
+      for (int depth = 0; depth < 4; depth++)
+        s.append("    }\n");
+      s.append("    return total;\n  }\n");
+    }
+    s.append("}\n");
+    return s.toString();
+  }
+
+  public void setUp() throws Exception {
+    pcp.Translator.errConsole = new Printer(System.err);
+    String text = source();
+    JavaFiveParser parser =
+      new JavaFiveParser(new StringReader(text), "Dense.java", text.length());
+    Result result = parser.pCompilationUnit(0);
+    GNode unit = (GNode)parser.value(result);
+    cls = new JavaFile(unit).getPublicClass();
+    nodes = new ArrayList<GNode>();
+    for (Object o : unit) {
+      if (o instanceof Node && ((Node)o).hasName("ClassDeclaration")) {
+        for (Object m : ((Node)o).getNode(5)) {
+          if (m instanceof Node && ((Node)m).hasName("MethodDeclaration"))
+            nodes.add((GNode)m);
+        }
+      }
+    }
+    out = new Printer(OutputStream.nullOutputStream());
+  }
+
+  public long iterate() {
+    long n = 0;
+    for (GNode node : nodes) {
+      JavaMethod m = new JavaMethod(node, cls);
+      m.translate(out);
+      n += m.getName().length();
+    }
+    out.flush();
+    return n;
+  }
+
+  /**
+   * Runs the benchmark.
+   *
+   * @param args The number of methods and measured iterations.
+   */
+  public static void main(String[] args) throws Exception {
+    int methods = 0 < args.length ? Integer.parseInt(args[0]) : 200;
+    int iterations = 1 < args.length ? Integer.parseInt(args[1]) : 20;
+    new ScopeBenchmark(methods).run("scope.resolve(" + methods + ")",
+                                    iterations, iterations);
+  }
+
+}
@@ -0,0 +1,434 @@
+/*
+ * pcp - The Producer of C++ Programs
+ * Copyright (C) 2011 Nabil Hassein, Thomas Huston, Mike Morreale, Marta Wilgan
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+#include "ptr.h"
+
+#ifdef PCP_CYCLE_COLLECTOR
+
+#include <cstdlib>
+#include <ctime>
+#include <iostream>
+#include <vector>
+
+// The number of allocations between collections; override with
+// -DPCP_CYCLE_THRESHOLD=n.
+#ifndef PCP_CYCLE_THRESHOLD
+#define PCP_CYCLE_THRESHOLD 10000
+#endif
+
+namespace __rt {
+
+  bool CycleCollector::sweeping = false;
+
+  // The buffered possible roots.  Like the class objects, the vector
+  // is created on first use to avoid the static initialization order
+  // fiasco, and it is never destroyed as static pointers are still
+  // released after main returns.
+  static std::vector<Ref*>& getRoots() {
+    static std::vector<Ref*>* roots = new std::vector<Ref*>();
+    return *roots;
+  }
+
+  // The work list shared by the traversals below; the visitors are
+  // plain function pointers, so they cannot carry state of their own.
+  static std::vector<Ref*>& getWork() {
+    static std::vector<Ref*>* work = new std::vector<Ref*>();
+    return *work;
+  }
+
+  // The allocations since the last collection.
+  static size_t allocations = 0;
+
+  static CycleStats totals = { 0, 0, 0, 0.0 };
+
+  // Prints the statistics at exit if PCP_GC_STATS is set.
+  static struct StatsPrinter {
+    ~StatsPrinter() {
+      if (0 == getenv("PCP_GC_STATS")) return;
+      std::cerr << "cycle collections: " << totals.collections
+                << ", objects reclaimed: " << totals.objects
+                << ", bytes reclaimed: " << totals.bytes
+                << ", pause time: " << totals.pause << "s" << std::endl;
+    }
+  } printer;
+
+  // ========================================================================
+
+  // Marks a child gray, removing the reference from the gray parent.
+  static void grayVisit(Ref* child) {
+    if (0 == child->addr) return;
+    child->count--;
+    getWork().push_back(child);
+  }
+
+  // Restores the reference from a black parent.
+  static void blackVisit(Ref* child) {
+    if (0 == child->addr) return;
+    child->count++;
+    if (BLACK != child->color) {
+      child->color = BLACK;
+      getWork().push_back(child);
+    }
+  }
+
+  // Queues a child for scanning or collection.
+  static void pushVisit(Ref* child) {
+    if (0 == child->addr) return;
+    getWork().push_back(child);
+  }
+
+  // Subtracts the counts due to references inside the subgraph.
+  static void markGray(Ref* s) {
+    std::vector<Ref*>& work = getWork();
+    work.push_back(s);
+    while (!work.empty()) {
+      Ref* r = work.back();
+      work.pop_back();
+      if (GRAY != r->color) {
+        r->color = GRAY;
+        r->trace(r->addr, &grayVisit);
+      }
+    }
+  }
+
+  // Restores the counts for a subgraph that is externally referenced.
+  static void scanBlack(Ref* s) {
+    std::vector<Ref*>& work = getWork();
+    std::vector<Ref*> pending;
+    s->color = BLACK;
+    work.swap(pending);
+    work.push_back(s);
+    while (!work.empty()) {
+      Ref* r = work.back();
+      work.pop_back();
+      r->trace(r->addr, &blackVisit);
+    }
+    work.swap(pending);
+  }
+
+  // Colors a gray subgraph white if it is only internally referenced.
+  static void scan(Ref* s) {
+    std::vector<Ref*>& work = getWork();
+    work.push_back(s);
+    while (!work.empty()) {
+      Ref* r = work.back();
+      work.pop_back();
+      if (GRAY != r->color) continue;
+      if (0 < r->count) {
+        scanBlack(r);
+      } else {
+        r->color = WHITE;
+        r->trace(r->addr, &pushVisit);
+      }
+    }
+  }
+
+  // Gathers the white subgraph reachable from a root.
+  static void collectWhite(Ref* s, std::vector<Ref*>& garbage) {
+    std::vector<Ref*>& work = getWork();
+    work.push_back(s);
+    while (!work.empty()) {
+      Ref* r = work.back();
+      work.pop_back();
+      if (WHITE != r->color || r->buffered) continue;
+      r->color = BLACK;
+      garbage.push_back(r);
+      r->trace(r->addr, &pushVisit);
+    }
+  }
+
+  // ========================================================================
+
+  Ref* CycleCollector::track(void* addr, void (*trace)(void*, Visitor),
+                             void (*destroy)(void*), size_t size) {
+    if (0 != addr && PCP_CYCLE_THRESHOLD <= ++allocations) {
+      allocations = 0;
+      if (!getRoots().empty()) collect();
+    }
+    Ref* ref = new Ref;
+    ref->count = 1;
+    ref->addr = addr;
+    ref->trace = trace;
+    ref->destroy = destroy;
+    ref->size = size;
+    ref->color = BLACK;
+    ref->buffered = false;
+    return ref;
+  }
+
+  void CycleCollector::release(Ref* ref) {
+    ref->color = BLACK;
+    void* addr = ref->addr;
+    if (0 != addr) {
+      ref->addr = 0;
+      ref->destroy(addr);
+    }
+    // A buffered Ref is still in the roots and is freed by the next
+    // collection.
+    if (!ref->buffered) delete ref;
+  }
+
+  void CycleCollector::possibleRoot(Ref* ref) {
+    ref->color = PURPLE;
+    if (!ref->buffered) {
+      ref->buffered = true;
+      getRoots().push_back(ref);
+    }
+  }
+
+  void CycleCollector::collect() {
+    clock_t start = clock();
+    std::vector<Ref*>& roots = getRoots();
+
+    // Mark the roots, dropping the ones that are no longer candidates.
+    size_t live = 0;
+    for (size_t i = 0; i < roots.size(); i++) {
+      Ref* r = roots[i];
+      if (PURPLE == r->color && 0 != r->addr) {
+        markGray(r);
+        roots[live++] = r;
+      } else {
+        r->buffered = false;
+        if (0 == r->addr) delete r;
+      }
+    }
+    roots.resize(live);
+
+    // Scan the roots.
+    for (size_t i = 0; i < roots.size(); i++) {
+      scan(roots[i]);
+    }
+
+    // Collect the white garbage.
+    std::vector<Ref*> garbage;
+    for (size_t i = 0; i < roots.size(); i++) {
+      roots[i]->buffered = false;
+      collectWhite(roots[i], garbage);
+    }
+    roots.clear();
+
+    // Free the garbage; the references between garbage objects, and
+    // from garbage to live objects, were already removed by markGray.
+    sweeping = true;
+    for (size_t i = 0; i < garbage.size(); i++) {
+      Ref* r = garbage[i];
+      totals.bytes += r->size;
+      r->destroy(r->addr);
+    }
+    sweeping = false;
+    for (size_t i = 0; i < garbage.size(); i++) {
+      delete garbage[i];
+    }
+
+    totals.collections++;
+    totals.objects += garbage.size();
+    totals.pause += (double)(clock() - start) / CLOCKS_PER_SEC;
+  }
+
+  const CycleStats& CycleCollector::stats() {
+    return totals;
+  }
+
+}
+
+#elif defined(PCP_MARK_SWEEP)
+
+#include <cstdlib>
+#include <ctime>
+#include <iostream>
+#include <unordered_map>
+#include <vector>
+
+// The number of bytes allocated between collections while the heap is
+// small; override with -DPCP_HEAP_THRESHOLD=n.  A larger heap is
+// collected whenever it has doubled since the last collection.
+#ifndef PCP_HEAP_THRESHOLD
+#define PCP_HEAP_THRESHOLD (8 * 1024 * 1024)
+#endif
+
+// The top of the main thread's stack, as recorded by glibc.
+extern "C" void* __libc_stack_end;
+
+namespace __rt {
+
+  // A registered object.
+  struct Entry {
+    void (*trace)(void*, Visitor);
+    void (*destroy)(void*);
+    size_t size;
+    bool marked;
+  };
+
+  typedef std::unordered_map<void*, Entry> Objects;
+
+  // The registered objects, the root sets, and the pinned objects.  As
+  // for the cycle collector, they are created on first use and never
+  // destroyed.
+  static Objects& getObjects() {
+    static Objects* objects = new Objects();
+    return *objects;
+  }
+
+  static std::vector<void (*)(Visitor)>& getRootSets() {
+    static std::vector<void (*)(Visitor)>* roots =
+      new std::vector<void (*)(Visitor)>();
+    return *roots;
+  }
+
+  static std::vector<void*>& getPinned() {
+    static std::vector<void*>* pinned = new std::vector<void*>();
+    return *pinned;
+  }
+
+  // The marked objects whose pointers have not been visited yet.
+  static std::vector<Objects::value_type*>& getMarkStack() {
+    static std::vector<Objects::value_type*>* stack =
+      new std::vector<Objects::value_type*>();
+    return *stack;
+  }
+
+  // The bytes allocated since the last collection, the bytes in
+  // registered objects, and the allocation volume triggering the next
+  // collection.
+  static size_t allocated = 0;
+  static size_t live = 0;
+  static size_t threshold = PCP_HEAP_THRESHOLD;
+
+  static HeapStats totals = { 0, 0, 0, 0, 0.0 };
+
+  // Prints the statistics at exit if PCP_GC_STATS is set.
+  static struct StatsPrinter {
+    ~StatsPrinter() {
+      if (0 == getenv("PCP_GC_STATS")) return;
+      std::cerr << "heap collections: " << totals.collections
+                << ", objects reclaimed: " << totals.objects
+                << ", bytes reclaimed: " << totals.bytes
+                << ", peak heap: " << totals.peak
+                << ", pause time: " << totals.pause << "s" << std::endl;
+    }
+  } printer;
+
+  // ========================================================================
+
+  // Marks a registered object; other addresses are ignored.
+  static void markVisit(void* addr) {
+    if (0 == addr) return;
+    Objects& objects = getObjects();
+    Objects::iterator i = objects.find(addr);
+    if (objects.end() == i || i->second.marked) return;
+    i->second.marked = true;
+    getMarkStack().push_back(&*i);
+  }
+
+  // Scans every word from this frame to the top of the stack.
+  __attribute__((noinline, no_sanitize_address))
+  static void scanStack() {
+    void* marker = 0;
+    for (void** p = &marker; p < (void**)__libc_stack_end; p++) {
+      markVisit(*p);
+    }
+  }
+
+  // Spills the callee-saved registers into this frame, which lies
+  // above the scanned part of the stack, before scanning it.
+  __attribute__((noinline))
+  static void markStack() {
+    __builtin_unwind_init();
+    scanStack();
+  }
+
+  // Runs a collection, keeping the given object alive.
+  static void run(void* keep) {
+    clock_t start = clock();
+    Objects& objects = getObjects();
+
+    // Mark the roots.
+    markVisit(keep);
+    std::vector<void*>& pinned = getPinned();
+    for (size_t i = 0; i < pinned.size(); i++) {
+      markVisit(pinned[i]);
+    }
+    std::vector<void (*)(Visitor)>& roots = getRootSets();
+    for (size_t i = 0; i < roots.size(); i++) {
+      roots[i](&markVisit);
+    }
+    markStack();
+
+    // Mark everything reachable from them.
+    std::vector<Objects::value_type*>& stack = getMarkStack();
+    while (!stack.empty()) {
+      Objects::value_type* e = stack.back();
+      stack.pop_back();
+      e->second.trace(e->first, &markVisit);
+    }
+
+    // Sweep the unmarked objects.
+    size_t freed = 0, bytes = 0;
+    for (Objects::iterator i = objects.begin(); i != objects.end(); ) {
+      if (i->second.marked) {
+        i->second.marked = false;
+        ++i;
+      } else {
+        freed++;
+        bytes += i->second.size;
+        i->second.destroy(i->first);
+        i = objects.erase(i);
+      }
+    }
+
+    live -= bytes;
+    allocated = 0;
+    threshold = live > PCP_HEAP_THRESHOLD ? live : PCP_HEAP_THRESHOLD;
+
+    totals.collections++;
+    totals.objects += freed;
+    totals.bytes += bytes;
+    totals.pause += (double)(clock() - start) / CLOCKS_PER_SEC;
+  }
+
+  // ========================================================================
+
+  void Heap::track(void* addr, void (*trace)(void*, Visitor),
+                   void (*destroy)(void*), size_t size) {
+    Entry entry = { trace, destroy, size, false };
+    if (!getObjects().insert(Objects::value_type(addr, entry)).second) return;
+    live += size;
+    if (totals.peak < live) totals.peak = live;
+    allocated += size;
+    if (threshold <= allocated) run(addr);
+  }
+
+  void Heap::pin(void* addr) {
+    getPinned().push_back(addr);
+  }
+
+  void Heap::addRoots(void (*trace)(Visitor)) {
+    getRootSets().push_back(trace);
+  }
+
+  void Heap::collect() {
+    run(0);
+  }
+
+  const HeapStats& Heap::stats() {
+    return totals;
+  }
+
+}
+
+#endif
@@ -39,6 +39,12 @@ namespace java {
       delete __this;
     }
 
+#ifdef PCP_POINTER_MAPS
+    // The pointer map.
+    void __Object::__trace(__Object* __this, __rt::Visitor visit) {
+    }
+#endif
+
     // java.lang.Object.hashCode()
     int32_t __Object::hashCode$void(Object __this) {
       return (int32_t)(intptr_t)__this.raw();
@@ -60,9 +66,9 @@ namespace java {
       Class k = __this->__vptr->getClass$void(__this);
 
       std::ostringstream sout;
-      sout << k->__vptr->getName$void(k)->data
+      sout << k->__vptr->getName$void(k)
            << '@' << std::hex << (uintptr_t)__this.raw();
-      return new __String(sout.str());
+      return __rt::string(sout.str());
     }
 
     // Internal accessor for java.lang.Object's class.
@@ -79,28 +85,37 @@ namespace java {
     // =======================================================================
 
     // java.lang.String(<literal>)
-    __String::__String(std::string data)
-      : __vptr(&__vtable), 
-        data(data) {
+    __String::__String(const char* chars, int32_t length)
+      : __vptr(&__vtable),
+        hash(0),
+        length(length) {
+      std::memcpy(data, chars, length);
+      data[length] = 0;
     }
 	
-    // The destructor.
+    // The destructor; the string was allocated by __rt::string().
     void __String::__delete(__String* __this) {
-      delete __this;
+      __this->~__String();
+      operator delete(__this);
+    }
+
+#ifdef PCP_POINTER_MAPS
+    // The pointer map.
+    void __String::__trace(__String* __this, __rt::Visitor visit) {
     }
+#endif
 
     // java.lang.String.hashCode()
     int32_t __String::hashCode$void(String __this) {
-      int32_t hash = 0;
-
-      // Use a C++ iterator to access string's characters.
-      for (std::string::iterator itr = __this->data.begin();
-           itr < __this->data.end();
-           itr++) {
-        hash = 31 * hash + *itr;
+      // Like Java, treat 0 as not computed yet.
+      if (0 == __this->hash) {
+        uint32_t hash = 0;
+        for (int32_t i = 0; i < __this->length; i++) {
+          hash = 31 * hash + __this->data[i];
+        }
+        __this->hash = hash;
       }
-
-      return hash;
+      return __this->hash;
     }
 
     // java.lang.String.equals()
@@ -110,9 +125,14 @@ namespace java {
       Class k = __String::__class();
       if (! k->__vptr->isInstance$Object(k, o)) return false;
 
-      // Do the actual comparison.
+      // Do the actual comparison, skipping the characters if the
+      // lengths or the cached hash codes differ.
       String other = o; // Implicit downcast.
-      return __this->data.compare(other->data) == 0;
+      if (__this == other) return true;
+      if (__this->length != other->length) return false;
+      if (0 != __this->hash && 0 != other->hash &&
+          __this->hash != other->hash) return false;
+      return 0 == std::memcmp(__this->data, other->data, __this->length);
     }
 
     // java.lang.String.toString()
@@ -122,17 +142,15 @@ namespace java {
 
     // java.lang.String.length()
     int32_t __String::length$void(String __this) {
-      return __this->data.length();
+      return __this->length;
     }
 
     // java.lang.String.charAt()
     unsigned char __String::charAt$int32_t(String __this, int32_t idx) {
-      if (0 > idx || idx >= __this->data.length()) {
+      if (0 > idx || idx >= __this->length) {
         throw IndexOutOfBoundsException();
       }
 
-      // Use std::string::operator[] to get character without
-      // duplicate range check.
       return __this->data[idx];
     }
 
@@ -148,7 +166,7 @@ namespace java {
     __String_VT __String::__vtable;
 
     std::ostream& operator<<(std::ostream& out, String s) {
-      out << s->data;
+      out.write(s->data, s->length);
       return out;
     }
 
@@ -161,6 +179,11 @@ namespace java {
         parent(parent),
         component(component),
         primitive(primitive) {
+#ifdef PCP_MARK_SWEEP
+      // Class objects are cached in function-local statics, which the
+      // collector cannot see.
+      __rt::Heap::pin(this);
+#endif
     }
 
     // The destructor.
@@ -168,12 +191,22 @@ namespace java {
       delete __this;
     }
 
+#ifdef PCP_POINTER_MAPS
+    // The pointer map.
+    void __Class::__trace(__Class* __this, __rt::Visitor visit) {
+      __rt::trace(__this->name, visit);
+      __rt::trace(__this->parent, visit);
+      __rt::trace(__this->component, visit);
+    }
+#endif
+
     // java.lang.Class.toString()
     String __Class::toString$void(Class __this) {
       if (__this->primitive) {
         return __this->name;
       } else {
-        return new __String("class " + __this->name->data);
+        return __rt::string("class " +
+                            std::string(__this->name->data, __this->name->length));
       }
     }
 
@@ -291,6 +324,35 @@ namespace java {
 
 namespace __rt {
 
+  // Function for creating a translated Java string from characters.
+  java::lang::String string(const char* chars, int32_t length) {
+    void* addr = operator new(sizeof(java::lang::__String) + length);
+    return new (addr) java::lang::__String(chars, length);
+  }
+
+  // Function for Integer.parseInt(): an optional sign followed by
+  // decimal digits, within the range of int.
+  int32_t parseInt(java::lang::String s) {
+    checkNotNull(s);
+    int32_t i = 0, length = s->length;
+    bool negative = false;
+    if (0 < length && ('-' == s->data[0] || '+' == s->data[0])) {
+      negative = '-' == s->data[0];
+      i++;
+    }
+    if (i == length) throw java::lang::NumberFormatException();
+    int64_t value = 0;
+    for (; i < length; i++) {
+      char c = s->data[i];
+      if ('0' > c || '9' < c) throw java::lang::NumberFormatException();
+      value = value * 10 + (c - '0');
+      if (value > (int64_t)INT32_MAX + 1) throw java::lang::NumberFormatException();
+    }
+    if (negative) value = -value;
+    if (value > INT32_MAX) throw java::lang::NumberFormatException();
+    return (int32_t)value;
+  }
+
   // The function returning the canonical null value.
   java::lang::Object null() {
     static java::lang::Object value(0);
@@ -19,11 +19,13 @@
 
 #pragma once
 
+#include <new>
 #include <stdint.h>
 #include <stdio.h>
 #include <string>
-#include <iostream>
+#include <iosfwd>
 #include <cstring>
+#include <algorithm>
 #include <math.h>
 
 #include "ptr.h"
@@ -84,6 +86,11 @@ namespace java {
       // The destructor.
       static void __delete(__Object*);
 
+#ifdef PCP_POINTER_MAPS
+      // The pointer map.
+      static void __trace(__Object*, __rt::Visitor);
+#endif
+
       // The methods implemented by java.lang.Object.
       static int32_t hashCode$void(Object);
       static bool equals$Object(Object, Object);
@@ -119,16 +126,26 @@ namespace java {
 
     // ======================================================================
 
-    // The data layout for java.lang.String.
+    // The data layout for java.lang.String.  The characters are stored
+    // inline after the header, so that each string takes only one
+    // allocation; the hash code is cached once computed, as in Java.
     struct __String {
       __String_VT* __vptr;
-      std::string data;
+      int32_t hash;
+      const int32_t length;
+      char data[1];
 
-      // The constructor;
-      __String(std::string data);
+      // The constructor; use __rt::string() to allocate the string
+      // together with its characters.
+      __String(const char* chars, int32_t length);
 
       // The destructor.
       static void __delete(__String*);
+
+#ifdef PCP_POINTER_MAPS
+      // The pointer map.
+      static void __trace(__String*, __rt::Visitor);
+#endif
       
       // The methods implemented by java.lang.String.
       static int32_t hashCode$void(String);
@@ -189,6 +206,11 @@ namespace java {
       // The destructor.
       static void __delete(__Class*);
 
+#ifdef PCP_POINTER_MAPS
+      // The pointer map.
+      static void __trace(__Class*, __rt::Visitor);
+#endif
+
       // The instance methods of java.lang.Class.
       static String toString$void(Class);
       static String getName$void(Class);
@@ -313,6 +335,12 @@ namespace java {
     class ArrayStoreException : public RuntimeException {
     };
 
+    class IllegalArgumentException : public RuntimeException {
+    };
+
+    class NumberFormatException : public IllegalArgumentException {
+    };
+
     class ClassCastException : public RuntimeException {
     };
 
@@ -336,25 +364,55 @@ namespace __rt {
   template <typename T>
   struct Array_VT;
 
+  // The storage shared by a flattened array and its rows; each of them
+  // releases the block when it is deleted.
+  struct Block {
+    int32_t count;
+  };
+
   // The data layout for arrays.
   template <typename T>
   struct Array {
     Array_VT<T>* __vptr;
     const int32_t length;
     T* __data;
+    Block* __block;
 
     // The constructor (defined inline).
     Array(const int32_t length)
-    : __vptr(&__vtable), length(length), __data(new T[length]) {
+    : __vptr(&__vtable), length(length), __data(new T[length]), __block(0) {
       // Only zero out __data for arrays of primitive types!
     }
 
+    // The constructor for an array stored in a shared block.
+    Array(const int32_t length, T* data, Block* block)
+    : __vptr(&__vtable), length(length), __data(data), __block(block) {
+    }
+
     // The destructor.
     static void __delete(Array* __this) {
-      delete[] __this->__data;
-      delete __this;
+      if (0 == __this->__block) {
+        delete[] __this->__data;
+        delete __this;
+      } else {
+        Block* block = __this->__block;
+        for (int32_t i = 0; i < __this->length; i++) {
+          __this->__data[i].~T();
+        }
+        __this->~Array();
+        if (0 == --block->count) operator delete(block);
+      }
     }
 
+#ifdef PCP_POINTER_MAPS
+    // The pointer map; only arrays of references visit anything.
+    static void __trace(Array* __this, Visitor visit) {
+      for (int32_t i = 0; i < __this->length; i++) {
+        trace(__this->__data[i], visit);
+      }
+    }
+#endif
+
     // Array access.
     T& operator[](int32_t idx) {
       if (0 > idx || idx >= length) {
@@ -412,11 +470,69 @@ namespace __rt {
 
   // ========================================================================
 
+  // Function for creating a translated Java string from characters.
+  java::lang::String string(const char* chars, int32_t length);
+
+  inline java::lang::String string(const std::string& s) {
+    return string(s.data(), s.length());
+  }
+
   // Function for converting a C string lieral to a translated
   // Java string.
   inline java::lang::String literal(const char * s) {
-    // C++ implicitly converts the C string to a std::string.
-    return new java::lang::__String(s);
+    return string(s, std::strlen(s));
+  }
+
+  // ========================================================================
+
+  // Function for Integer.parseInt().
+  int32_t parseInt(java::lang::String s);
+
+  // Function for Math.sqrt().
+  inline double sqrt(double x) {
+    return ::sqrt(x);
+  }
+
+  // ========================================================================
+
+  // Rounds a size up to the alignment of any array element or header.
+  inline size_t align(size_t size) {
+    return (size + 15) & ~(size_t)15;
+  }
+
+  // Template function for a rectangular two-dimensional array of
+  // primitives, allocated as one block holding the outer array, its
+  // row pointers, the row headers, and the zero-filled elements in
+  // row-major order.  The rows are ordinary arrays, so they can still
+  // be aliased and replaced.
+  template <typename T>
+  Ptr<Array<Ptr<Array<T> > > > newFlatArray(int32_t m, int32_t n) {
+    typedef Ptr<Array<T> > Row;
+
+    size_t outerOffset = align(sizeof(Block));
+    size_t rowsOffset = outerOffset + align(sizeof(Array<Row>));
+    size_t headersOffset = rowsOffset + align(m * sizeof(Row));
+    size_t dataOffset = headersOffset + align(m * sizeof(Array<T>));
+    char* base = (char*)operator new(dataOffset + (size_t)m * n * sizeof(T));
+
+    Block* block = new (base) Block();
+    block->count = m + 1;
+
+    // Wrap the outer array before the rows, so that a collector
+    // running when a row is wrapped already sees the outer array.
+    Row* rows = (Row*)(base + rowsOffset);
+    for (int32_t i = 0; i < m; i++) {
+      new (rows + i) Row();
+    }
+    Ptr<Array<Row> > result = new (base + outerOffset) Array<Row>(m, rows, block);
+
+    T* data = (T*)(base + dataOffset);
+    std::memset(data, 0, (size_t)m * n * sizeof(T));
+    Array<T>* headers = (Array<T>*)(base + headersOffset);
+    for (int32_t i = 0; i < m; i++) {
+      rows[i] = new (headers + i) Array<T>(n, data + (size_t)i * n, block);
+    }
+    return result;
   }
 
   // ========================================================================
@@ -442,6 +558,98 @@ namespace __rt {
 
   // ========================================================================
 
+  // Template function to check the range of a bulk array operation.
+  template <typename T>
+  void checkRange(Ptr<Array<T> > array, int32_t offset, int32_t length) {
+    if (0 > offset || 0 > length || offset > array->length - length) {
+      throw java::lang::ArrayIndexOutOfBoundsException();
+    }
+  }
+
+  // Template functions copying a range of array elements after the
+  // range checks.  Primitives are moved as raw memory; references are
+  // assigned one by one, and checked one by one only when the arrays'
+  // classes differ.
+  template <typename T>
+  void copyRange(Ptr<Array<T> > src, int32_t srcPos,
+                 Ptr<Array<T> > dest, int32_t destPos, int32_t length) {
+    std::memmove(dest->__data + destPos, src->__data + srcPos,
+                 length * sizeof(T));
+  }
+
+  template <typename T, typename U>
+  void copyRange(Ptr<Array<Ptr<T> > > src, int32_t srcPos,
+                 Ptr<Array<Ptr<U> > > dest, int32_t destPos, int32_t length) {
+    Ptr<T>* from = src->__data + srcPos;
+    Ptr<U>* to = dest->__data + destPos;
+    for (int32_t i = 0; i < length; i++) {
+      checkStore(dest, from[i]);
+      to[i] = from[i];
+    }
+  }
+
+  template <typename T>
+  void copyRange(Ptr<Array<Ptr<T> > > src, int32_t srcPos,
+                 Ptr<Array<Ptr<T> > > dest, int32_t destPos, int32_t length) {
+    if (src->__vptr->getClass$void(src) != dest->__vptr->getClass$void(dest)) {
+      copyRange<T, T>(src, srcPos, dest, destPos, length);
+      return;
+    }
+    Ptr<T>* from = src->__data + srcPos;
+    Ptr<T>* to = dest->__data + destPos;
+    if (to < from) {
+      for (int32_t i = 0; i < length; i++) to[i] = from[i];
+    } else {
+      for (int32_t i = length - 1; i >= 0; i--) to[i] = from[i];
+    }
+  }
+
+  // Template function for System.arraycopy().
+  template <typename T, typename U>
+  void arraycopy(Ptr<Array<T> > src, int32_t srcPos,
+                 Ptr<Array<U> > dest, int32_t destPos, int32_t length) {
+    checkNotNull(src);
+    checkNotNull(dest);
+    checkRange(src, srcPos, length);
+    checkRange(dest, destPos, length);
+    copyRange(src, srcPos, dest, destPos, length);
+  }
+
+  // Template functions for java.util.Arrays.fill().  Zeros and bytes
+  // are filled with memset; a reference is checked once.
+  template <typename T, typename V>
+  void fill(Ptr<Array<T> > array, int32_t from, int32_t to, V value) {
+    checkNotNull(array);
+    if (from > to) throw java::lang::IllegalArgumentException();
+    checkRange(array, from, to - from);
+    T v = value;
+    T zero = 0;
+    if (1 == sizeof(T) || 0 == std::memcmp(&v, &zero, sizeof(T))) {
+      std::memset(array->__data + from, *(unsigned char*)&v,
+                  (to - from) * sizeof(T));
+    } else {
+      std::fill(array->__data + from, array->__data + to, v);
+    }
+  }
+
+  template <typename T, typename V>
+  void fill(Ptr<Array<Ptr<T> > > array, int32_t from, int32_t to, V value) {
+    checkNotNull(array);
+    if (from > to) throw java::lang::IllegalArgumentException();
+    checkRange(array, from, to - from);
+    checkStore(array, value);
+    Ptr<T> v = value;
+    std::fill(array->__data + from, array->__data + to, v);
+  }
+
+  template <typename T, typename V>
+  void fill(Ptr<Array<T> > array, V value) {
+    checkNotNull(array);
+    fill(array, 0, array->length, value);
+  }
+
+  // ========================================================================
+
   // Template function for translated Java casts.
   template <typename T, typename U>
   T java_cast(U object) {
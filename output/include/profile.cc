@@ -0,0 +1,229 @@
+/*
+ * pcp - The Producer of C++ Programs
+ * Copyright (C) 2011 Nabil Hassein, Thomas Huston, Mike Morreale, Marta Wilgan
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+#include "ptr.h"
+
+#ifdef PCP_PROFILE
+
+#include <algorithm>
+#include <cstdlib>
+#include <fstream>
+#include <iomanip>
+#include <iostream>
+#include <map>
+#include <mutex>
+#include <string>
+#include <vector>
+
+namespace __rt {
+
+  thread_local SiteCounts* Profile::table = 0;
+  thread_local size_t Profile::capacity = 0;
+
+  // The counters of one thread.
+  struct ThreadCounts {
+    SiteCounts* table;
+    size_t capacity;
+  };
+
+  // The registered sites, the counters of every thread, and the lock
+  // guarding both.  Like the collectors' buffers, they are created on
+  // first use, as sites may be reached during static initialization,
+  // and never destroyed.
+  static std::mutex& getLock() {
+    static std::mutex* lock = new std::mutex();
+    return *lock;
+  }
+
+  static std::vector<Site*>& getSites() {
+    static std::vector<Site*>* sites = new std::vector<Site*>(1);
+    return *sites;
+  }
+
+  static std::vector<ThreadCounts*>& getThreads() {
+    static std::vector<ThreadCounts*>* threads = new std::vector<ThreadCounts*>();
+    return *threads;
+  }
+
+  // The current thread's entry in the list of counters.
+  static thread_local ThreadCounts* current = 0;
+
+  Site::Site(const char* file, int line, const char* type)
+  : file(file), line(line), type(type) {
+    std::lock_guard<std::mutex> guard(getLock());
+    index = getSites().size();
+    getSites().push_back(this);
+  }
+
+  SiteCounts& Profile::grow(size_t index) {
+    std::lock_guard<std::mutex> guard(getLock());
+    if (0 == current) {
+      current = new ThreadCounts();
+      current->table = 0;
+      current->capacity = 0;
+      getThreads().push_back(current);
+    }
+    size_t size = std::max(std::max(index + 1, 2 * capacity), (size_t)64);
+    SiteCounts* grown = new SiteCounts[size]();
+    std::copy(table, table + capacity, grown);
+    delete[] table;
+    table = current->table = grown;
+    capacity = current->capacity = size;
+    return table[index];
+  }
+
+  // ========================================================================
+
+  // The totals of a site or class over all threads.
+  struct Totals {
+    std::string file;
+    int line;
+    std::string type;
+    SiteCounts counts;
+  };
+
+  static void add(SiteCounts& to, const SiteCounts& from) {
+    to.allocations += from.allocations;
+    to.bytes += from.bytes;
+    to.increments += from.increments;
+    to.decrements += from.decrements;
+    to.frees += from.frees;
+  }
+
+  // Orders totals by bytes, then allocations, then reference count
+  // traffic, then by location.
+  static bool heavier(const Totals& a, const Totals& b) {
+    if (a.counts.bytes != b.counts.bytes)
+      return a.counts.bytes > b.counts.bytes;
+    if (a.counts.allocations != b.counts.allocations)
+      return a.counts.allocations > b.counts.allocations;
+    size_t ta = a.counts.increments + a.counts.decrements;
+    size_t tb = b.counts.increments + b.counts.decrements;
+    if (ta != tb)
+      return ta > tb;
+    if (a.file != b.file)
+      return a.file < b.file;
+    if (a.line != b.line)
+      return a.line < b.line;
+    return a.type < b.type;
+  }
+
+  static void printTable(std::ostream& out, const char* title,
+                         const std::vector<Totals>& rows, bool sites) {
+    out << title << std::endl;
+    out << std::left << std::setw(sites ? 40 : 24) << (sites ? "site" : "class")
+        << std::right << std::setw(12) << "allocs" << std::setw(14) << "bytes"
+        << std::setw(14) << "increments" << std::setw(14) << "decrements"
+        << std::setw(12) << "frees" << std::endl;
+    for (size_t i = 0; i < rows.size(); i++) {
+      const Totals& t = rows[i];
+      std::string name = t.type;
+      if (sites)
+        name = t.file.empty() ? t.type : t.file + ":" + std::to_string(t.line) + " " + t.type;
+      out << std::left << std::setw(sites ? 40 : 24) << name << std::right
+          << std::setw(12) << t.counts.allocations << std::setw(14) << t.counts.bytes
+          << std::setw(14) << t.counts.increments << std::setw(14) << t.counts.decrements
+          << std::setw(12) << t.counts.frees << std::endl;
+    }
+  }
+
+  // Quotes a string for JSON.
+  static std::string quote(const std::string& s) {
+    std::string quoted = "\"";
+    for (size_t i = 0; i < s.size(); i++) {
+      if ('"' == s[i] || '\\' == s[i])
+        quoted += '\\';
+      quoted += s[i];
+    }
+    return quoted + "\"";
+  }
+
+  static void printJSON(std::ostream& out, const char* name,
+                        const std::vector<Totals>& rows, bool sites) {
+    out << "  \"" << name << "\": [";
+    for (size_t i = 0; i < rows.size(); i++) {
+      const Totals& t = rows[i];
+      out << (0 == i ? "\n" : ",\n") << "    {";
+      if (sites)
+        out << "\"file\": " << quote(t.file) << ", \"line\": " << t.line << ", ";
+      out << "\"type\": " << quote(t.type)
+          << ", \"allocations\": " << t.counts.allocations
+          << ", \"bytes\": " << t.counts.bytes
+          << ", \"increments\": " << t.counts.increments
+          << ", \"decrements\": " << t.counts.decrements
+          << ", \"frees\": " << t.counts.frees << "}";
+    }
+    out << "\n  ]";
+  }
+
+  // Writes the report at exit: as JSON to the file named by
+  // PCP_PROFILE_JSON if it is set, as tables on standard error
+  // otherwise.
+  static struct ProfilePrinter {
+    ~ProfilePrinter() {
+      std::lock_guard<std::mutex> guard(getLock());
+      std::vector<Site*>& sites = getSites();
+      std::vector<ThreadCounts*>& threads = getThreads();
+
+      std::vector<Totals> bySite(sites.size());
+      for (size_t i = 0; i < sites.size(); i++) {
+        Totals& t = bySite[i];
+        t.file = 0 == sites[i] ? "" : sites[i]->file;
+        t.line = 0 == sites[i] ? 0 : sites[i]->line;
+        t.type = 0 == sites[i] ? "(untagged)" : sites[i]->type;
+        t.counts = SiteCounts();
+        for (size_t j = 0; j < threads.size(); j++) {
+          if (i < threads[j]->capacity)
+            add(t.counts, threads[j]->table[i]);
+        }
+      }
+
+      std::map<std::string, Totals> classes;
+      for (size_t i = 0; i < bySite.size(); i++) {
+        Totals& t = classes[bySite[i].type];
+        t.type = bySite[i].type;
+        add(t.counts, bySite[i].counts);
+      }
+      std::vector<Totals> byClass;
+      for (std::map<std::string, Totals>::iterator i = classes.begin();
+           i != classes.end(); ++i) {
+        byClass.push_back(i->second);
+      }
+
+      std::sort(bySite.begin(), bySite.end(), heavier);
+      std::sort(byClass.begin(), byClass.end(), heavier);
+
+      const char* path = getenv("PCP_PROFILE_JSON");
+      if (0 != path) {
+        std::ofstream out(path);
+        out << "{\n";
+        printJSON(out, "sites", bySite, true);
+        out << ",\n";
+        printJSON(out, "classes", byClass, false);
+        out << "\n}\n";
+      } else {
+        printTable(std::cerr, "allocation sites:", bySite, true);
+        std::cerr << std::endl;
+        printTable(std::cerr, "classes:", byClass, false);
+      }
+    }
+  } printer;
+
+}
+
+#endif
@@ -19,18 +19,510 @@
 
 #pragma once
 
-#include <iostream>
 #include <cstring>
 
+#ifdef PCP_PROFILE
+#include <cstddef>
+#endif
+
 #if 0
+#include <iostream>
 #define TRACE(addr) \
   std::cout << __FUNCTION__ << ":" << __LINE__ << ":" << addr << std::endl
 #else
 #define TRACE(addr)
 #endif
 
+// Both collectors find the pointers inside objects through the pointer
+// maps emitted by the translator.
+#if defined(PCP_CYCLE_COLLECTOR) || defined(PCP_MARK_SWEEP)
+#define PCP_POINTER_MAPS
+#endif
+
 namespace __rt {
 
+  // ========================================================================
+
+  // The allocation profiler.  The translator's -profileAllocations
+  // option wraps every class and array allocation in tag(), naming its
+  // source file, line, and Java type with PCP_SITE.  Compiled with
+  // -DPCP_PROFILE, each site counts its allocations and bytes; with the
+  // default reference counting, each object also remembers its site,
+  // which counts the increments, decrements, and frees of the object's
+  // reference count.  The counters are kept per thread and summed when
+  // the report is written at exit.  Without -DPCP_PROFILE, tag() simply
+  // returns the allocation.
+
+  struct Site;
+
+#ifdef PCP_PROFILE
+
+  // A source location allocating objects, registered when it is first
+  // reached.
+  struct Site {
+    const char* file;
+    int line;
+    const char* type;
+    size_t index;
+
+    Site(const char* file, int line, const char* type);
+  };
+
+  // The counters of a site.
+  struct SiteCounts {
+    size_t allocations;
+    size_t bytes;
+    size_t increments;
+    size_t decrements;
+    size_t frees;
+  };
+
+  class Profile {
+  public:
+    // Gets the current thread's counters for a site; the null site
+    // stands for objects not allocated at a tagged site.
+    static inline SiteCounts& counts(Site* site) {
+      size_t index = 0 == site ? 0 : site->index;
+      if (index >= capacity) return grow(index);
+      return table[index];
+    }
+
+  private:
+    // Makes room for a site in the current thread's counters.
+    static SiteCounts& grow(size_t index);
+
+    static thread_local SiteCounts* table;
+    static thread_local size_t capacity;
+  };
+
+  // A unique, self-registering site for each use.
+#define PCP_SITE(file, line, type) \
+  ([]() -> __rt::Site* { static __rt::Site site(file, line, type); return &site; }())
+
+#else
+
+#define PCP_SITE(file, line, type) ((__rt::Site*)0)
+
+  // Returns the allocation unchanged.
+  template<typename T>
+  inline T tag(Site* site, T allocation) {
+    return allocation;
+  }
+
+#endif
+
+#ifdef PCP_CYCLE_COLLECTOR
+
+  // ========================================================================
+
+  // The opt-in cycle collector.  Every object still carries a reference
+  // count, but the count lives in a shared Ref block that also records
+  // how to find the object's outgoing pointers.  When a count drops to
+  // a non-zero value, the object becomes a possible root of a garbage
+  // cycle; once enough objects have been allocated, the collector runs
+  // a synchronous trial deletion over those roots (Bacon and Rajan,
+  // "Concurrent Cycle Collection in Reference Counted Systems", 2001).
+  //
+  // Translated classes provide the pointer maps as __trace() functions
+  // emitted by the translator's -collectCycles option.
+
+  struct Ref;
+
+  // A callback invoked on the Ref of every pointer field of an object.
+  typedef void (*Visitor)(Ref*);
+
+  // The colors used by the trial deletion.
+  enum Color { BLACK, GRAY, WHITE, PURPLE };
+
+  // The shared reference count for an object.
+  struct Ref {
+    size_t count;
+    void* addr;
+    void (*trace)(void*, Visitor);
+    void (*destroy)(void*);
+    size_t size;
+    unsigned char color;
+    bool buffered;
+  };
+
+  // The collector statistics.
+  struct CycleStats {
+    size_t collections;
+    size_t objects;
+    size_t bytes;
+    double pause;
+  };
+
+  class CycleCollector {
+  public:
+    // Registers a newly allocated object, possibly running a collection.
+    static Ref* track(void* addr, void (*trace)(void*, Visitor),
+                      void (*destroy)(void*), size_t size);
+
+    // Frees an object whose count has dropped to zero.
+    static void release(Ref* ref);
+
+    // Records an object whose count dropped to a non-zero value.
+    static void possibleRoot(Ref* ref);
+
+    // Runs a collection over the buffered possible roots.
+    static void collect();
+
+    // Gets the statistics for all collections so far.
+    static const CycleStats& stats();
+
+    // Set while garbage cycles are being freed; the pointers inside
+    // the freed objects have already been accounted for.
+    static bool sweeping;
+  };
+
+  // Decrements a count and releases or buffers the object.  While
+  // garbage is being freed, only null pointers are still counted.
+  inline void decrement(Ref* ref) {
+    if (CycleCollector::sweeping && 0 != ref->addr) return;
+    if (0 == --ref->count) {
+      CycleCollector::release(ref);
+    } else if (0 != ref->addr) {
+      CycleCollector::possibleRoot(ref);
+    }
+  }
+
+  // Increments a count; a referenced object cannot be cycle garbage.
+  inline void increment(Ref* ref) {
+    ++ref->count;
+    ref->color = BLACK;
+  }
+
+  template<typename T>
+  class Ptr;
+
+  // Visits the object referenced by a pointer field.
+  template<typename T>
+  inline void trace(const Ptr<T>& field, Visitor visit) {
+    visit(field.ref());
+  }
+
+#elif defined(PCP_MARK_SWEEP)
+
+  // ========================================================================
+
+  // The tracing mark-sweep backend.  Ptr is a plain pointer wrapper
+  // without any counting; instead, every object is registered with
+  // the Heap when it is first wrapped.  Once enough bytes have been
+  // allocated, the Heap marks everything reachable from the roots and
+  // frees the rest.
+  //
+  // The roots are the static fields of translated classes, listed by
+  // the __traceStatics() functions emitted by the translator's
+  // -markSweep option, the pinned class objects, and the stack.  The
+  // stack and registers are scanned conservatively: any word holding
+  // the start address of a registered object keeps it alive.  Pointers
+  // inside objects are found precisely through the __trace() pointer
+  // maps.
+
+  // A callback invoked on the address stored in every pointer field.
+  typedef void (*Visitor)(void*);
+
+  // The collector statistics.
+  struct HeapStats {
+    size_t collections;
+    size_t objects;
+    size_t bytes;
+    size_t peak;
+    double pause;
+  };
+
+  class Heap {
+  public:
+    // Registers an object when it is first wrapped by a Ptr, possibly
+    // running a collection.  Registering an object again has no effect.
+    static void track(void* addr, void (*trace)(void*, Visitor),
+                      void (*destroy)(void*), size_t size);
+
+    // Keeps an object alive for the rest of the program.
+    static void pin(void* addr);
+
+    // Adds a function visiting a set of static roots.
+    static void addRoots(void (*trace)(Visitor));
+
+    // Runs a collection.
+    static void collect();
+
+    // Gets the statistics for all collections so far.
+    static const HeapStats& stats();
+  };
+
+  // Registers the static roots of a translated class during static
+  // initialization.
+  struct RootSet {
+    RootSet(void (*trace)(Visitor)) {
+      Heap::addRoots(trace);
+    }
+  };
+
+  template<typename T>
+  class Ptr;
+
+  // Visits the object referenced by a pointer field.
+  template<typename T>
+  inline void trace(const Ptr<T>& field, Visitor visit) {
+    visit(field.raw());
+  }
+
+#endif
+
+#ifdef PCP_POINTER_MAPS
+
+  // Primitive fields and array elements do not hold references.
+  template<typename T>
+  inline void trace(const T& field, Visitor visit) {
+  }
+
+  // Template functions for typed access to a registered object.
+  template<typename T>
+  void traceObject(void* addr, Visitor visit) {
+    T::__trace((T*)addr, visit);
+  }
+
+  template<typename T>
+  void destroyObject(void* addr) {
+    T* object = (T*)addr;
+    object->__vptr->__delete(object);
+  }
+
+#endif
+
+#if defined(PCP_POINTER_MAPS) || defined(PCP_PROFILE)
+
+  // Template functions for the size of an allocation; arrays include
+  // their element storage.
+  template<typename T>
+  struct Array;
+
+  template<typename T>
+  inline size_t sizeOf(T* addr) {
+    return sizeof(T);
+  }
+
+  template<typename T>
+  inline size_t sizeOf(Array<T>* addr) {
+    return sizeof(Array<T>) + addr->length * sizeof(T);
+  }
+
+#endif
+
+#ifdef PCP_CYCLE_COLLECTOR
+
+  template<typename T>
+  class Ptr {
+    T* addr;
+    Ref* counter;
+
+  public:
+    typedef T value_t;
+
+    inline Ptr(T* addr = 0)
+    : addr(addr),
+      counter(CycleCollector::track(addr, &traceObject<T>, &destroyObject<T>,
+                                    0 == addr ? 0 : sizeOf(addr))) {
+      TRACE(addr);
+    }
+
+    inline Ptr(const Ptr& other) : addr(other.addr), counter(other.counter) {
+      TRACE(addr);
+      increment(counter);
+    }
+
+    inline ~Ptr() {
+      TRACE(addr);
+      decrement(counter);
+    }
+
+    inline Ptr& operator=(const Ptr& right) {
+      TRACE(addr);
+      if (addr != right.addr) {
+        Ref* old = counter;
+        addr = right.addr;
+        counter = right.counter;
+        increment(counter);
+        decrement(old);
+      }
+      return *this;
+    }
+
+    inline T& operator*()  const { TRACE(addr); return *addr; }
+    inline T* operator->() const { TRACE(addr); return addr;  }
+    inline T* raw()        const { TRACE(addr); return addr;  }
+    inline Ref* ref()      const { return counter; }
+
+    template<typename U>
+    friend class Ptr;
+
+    template<typename U>
+    inline Ptr(const Ptr<U>& other)
+    : addr((T*)other.addr), counter(other.counter) {
+      TRACE(addr);
+      increment(counter);
+    }
+
+    template<typename U>
+    inline bool operator==(const Ptr<U>& other) const {
+      return addr == (T*)other.addr;
+    }
+    
+    template<typename U>
+    inline bool operator!=(const Ptr<U>& other) const {
+      return addr != (T*)other.addr;
+    }
+
+  };
+
+#elif defined(PCP_MARK_SWEEP)
+
+  template<typename T>
+  class Ptr {
+    T* addr;
+
+  public:
+    typedef T value_t;
+
+    inline Ptr(T* addr = 0) : addr(addr) {
+      TRACE(addr);
+      if (0 != addr) {
+        Heap::track(addr, &traceObject<T>, &destroyObject<T>, sizeOf(addr));
+      }
+    }
+
+    inline Ptr(const Ptr& other) : addr(other.addr) {
+      TRACE(addr);
+    }
+
+    inline Ptr& operator=(const Ptr& right) {
+      TRACE(addr);
+      addr = right.addr;
+      return *this;
+    }
+
+    inline T& operator*()  const { TRACE(addr); return *addr; }
+    inline T* operator->() const { TRACE(addr); return addr;  }
+    inline T* raw()        const { TRACE(addr); return addr;  }
+
+    template<typename U>
+    friend class Ptr;
+
+    template<typename U>
+    inline Ptr(const Ptr<U>& other) : addr((T*)other.addr) {
+      TRACE(addr);
+    }
+
+    template<typename U>
+    inline bool operator==(const Ptr<U>& other) const {
+      return addr == (T*)other.addr;
+    }
+    
+    template<typename U>
+    inline bool operator!=(const Ptr<U>& other) const {
+      return addr != (T*)other.addr;
+    }
+
+  };
+
+#elif defined(PCP_PROFILE)
+
+  // The reference count of an object and its allocation site.
+  struct Counter {
+    size_t count;
+    Site* site;
+  };
+
+  template<typename T>
+  class Ptr {
+    T* addr;
+    Counter* counter;
+
+    // Drops a reference, freeing the object with the last one.  The
+    // references of null pointers are not counted.
+    inline void release() {
+      if (0 == addr) {
+        if (0 == --counter->count)
+          delete counter;
+        return;
+      }
+      SiteCounts& counts = Profile::counts(counter->site);
+      counts.decrements++;
+      if (0 == --counter->count) {
+        counts.frees++;
+        addr->__vptr->__delete(addr);
+        delete counter;
+      }
+    }
+
+    // Adds a reference.
+    inline void retain() {
+      ++counter->count;
+      if (0 != addr)
+        Profile::counts(counter->site).increments++;
+    }
+
+  public:
+    typedef T value_t;
+
+    inline Ptr(T* addr = 0) : addr(addr), counter(new Counter()) {
+      TRACE(addr);
+      counter->count = 1;
+      counter->site = 0;
+    }
+
+    inline Ptr(const Ptr& other) : addr(other.addr), counter(other.counter) {
+      TRACE(addr);
+      retain();
+    }
+
+    inline ~Ptr() {
+      TRACE(addr);
+      release();
+    }
+
+    inline Ptr& operator=(const Ptr& right) {
+      TRACE(addr);
+      if (addr != right.addr) {
+        release();
+        addr = right.addr;
+        counter = right.counter;
+        retain();
+      }
+      return *this;
+    }
+
+    inline T& operator*()  const { TRACE(addr); return *addr; }
+    inline T* operator->() const { TRACE(addr); return addr;  }
+    inline T* raw()        const { TRACE(addr); return addr;  }
+    inline Counter* ref()  const { return counter; }
+
+    template<typename U>
+    friend class Ptr;
+
+    template<typename U>
+    inline Ptr(const Ptr<U>& other)
+    : addr((T*)other.addr), counter(other.counter) {
+      TRACE(addr);
+      retain();
+    }
+
+    template<typename U>
+    inline bool operator==(const Ptr<U>& other) const {
+      return addr == (T*)other.addr;
+    }
+    
+    template<typename U>
+    inline bool operator!=(const Ptr<U>& other) const {
+      return addr != (T*)other.addr;
+    }
+
+  };
+
+#else
+
   template<typename T>
   class Ptr {
     T* addr;
@@ -96,4 +588,37 @@ namespace __rt {
 
   };
 
+#endif
+
+#ifdef PCP_PROFILE
+
+  // Counts an allocation at a site and, with reference counting,
+  // records the site in the object's count.  The constructor has run
+  // by then, and the references it took were counted before the site
+  // was known; those still held are released as the site's, so their
+  // increments move to the site as well.
+  template<typename T>
+  inline Ptr<T> tag(Site* site, const Ptr<T>& allocation) {
+    SiteCounts& counts = Profile::counts(site);
+    counts.allocations++;
+    counts.bytes += sizeOf(allocation.raw());
+#if !defined(PCP_CYCLE_COLLECTOR) && !defined(PCP_MARK_SWEEP)
+    Counter* counter = allocation.ref();
+    if (counter->site != site) {
+      size_t held = counter->count - 1;
+      Profile::counts(counter->site).increments -= held;
+      Profile::counts(site).increments += held;
+      counter->site = site;
+    }
+#endif
+    return allocation;
+  }
+
+  template<typename T>
+  inline Ptr<T> tag(Site* site, T* allocation) {
+    return tag(site, Ptr<T>(allocation));
+  }
+
+#endif
+
 }
@@ -0,0 +1,380 @@
+/*
+ * pcp - The Producer of C++ Programs
+ * Copyright (C) 2011 Nabil Hassein, Thomas Huston, Mike Morreale, Marta Wilgan
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package pcp;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A build driver compiling the generated C++ files through a
+ * content-addressed object cache.  The key of each translation
+ * unit is the SHA-256 hash of the compiler's version, the
+ * compiler flags, and the text of the file along with every file
+ * it includes with quotes, which covers the package headers and
+ * the runtime headers.  Only the files whose key has no object in
+ * the cache are compiled, in parallel, and the objects are then
+ * linked from the cache in the order given, which is the order of
+ * static initialization.  Unchanged packages are thus never
+ * compiled again, whatever the file timestamps say.
+ *
+ * @author Nabil Hassein
+ * @author Thomas Huston
+ * @author Mike Morreale
+ * @author Marta Wilgan
+ *
+ * @version 2.1.1
+ */
+public class Builder {
+
+  // The version of the key format, changed to invalidate the cache
+  private static final String FORMAT = "pcp-object-1";
+
+  // The includes with quotes in the text of a file
+  private static final Pattern INCLUDE =
+    Pattern.compile("^[ \\t]*#[ \\t]*include[ \\t]*\"([^\"]+)\"", Pattern.MULTILINE);
+
+  // The directory of the C++ files
+  private final File dir;
+
+  // The directory of the cached objects
+  private final File cache;
+
+  // The compiler command and its flags
+  private final String compiler;
+  private final List<String> flags;
+
+  // The number of compilers run at once
+  private final int jobs;
+
+  // The output of the compiler's version, part of every key
+  private String version;
+
+  // The number of files compiled and found in the cache
+  private int compiled;
+  private int cached;
+
+
+  // =========================== Constructors =======================
+
+  /**
+   * Creates a new builder.
+   *
+   * @param dir The directory of the C++ files.
+   * @param cache The directory of the cached objects.
+   * @param compiler The compiler command.
+   * @param flags The compiler flags.
+   * @param jobs The number of compilers to run at once.
+   */
+  public Builder(File dir, File cache, String compiler, List<String> flags, int jobs) {
+    this.dir = dir;
+    this.cache = cache;
+    this.compiler = compiler;
+    this.flags = flags;
+    this.jobs = jobs;
+  }
+
+
+  // ============================ Get Methods =======================
+
+  /**
+   * Gets the number of files compiled by the last build.
+   *
+   * @return The number of files.
+   */
+  public int getCompiled() {
+    return compiled;
+  }
+
+  /**
+   * Gets the number of files whose objects the last build
+   * found in the cache.
+   *
+   * @return The number of files.
+   */
+  public int getCached() {
+    return cached;
+  }
+
+  /**
+   * Gets the key of a translation unit.
+   *
+   * @param source The path of the file, relative to the directory
+   * of the C++ files.
+   *
+   * @return The key as a hexadecimal string.
+   *
+   * @throws IOException Signals an I/O error.
+   */
+  private String getKey(String source) throws IOException {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IOException(e);
+    }
+    update(digest, FORMAT);
+    update(digest, version);
+    for (String flag : flags)
+      update(digest, flag);
+
+    // The file and everything it includes, in the order included
+    Path base = dir.getCanonicalFile().toPath();
+    Set<File> files = new LinkedHashSet<File>();
+    addIncludes(new File(dir, source), files);
+    for (File f : files) {
+      update(digest, base.relativize(f.toPath()).toString());
+      byte[] text = Files.readAllBytes(f.toPath());
+      update(digest, Integer.toString(text.length));
+      digest.update(text);
+    }
+
+    StringBuilder key = new StringBuilder();
+    for (byte b : digest.digest())
+      key.append(String.format("%02x", b & 0xff));
+    return key.toString();
+  }
+
+  /**
+   * Adds a file and the existing files it includes with
+   * quotes, recursively, to the set.  An include is looked up
+   * next to the including file and then in the directory of the
+   * C++ files, as the compiler does.
+   *
+   * @param file The file.
+   * @param files The files found so far.
+   *
+   * @throws IOException Signals an I/O error.
+   */
+  private void addIncludes(File file, Set<File> files) throws IOException {
+    file = file.getCanonicalFile();
+    if (!files.add(file))
+      return;
+    String text = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    Matcher m = INCLUDE.matcher(text);
+    while (m.find()) {
+      File include = new File(file.getParentFile(), m.group(1));
+      if (!include.isFile())
+        include = new File(dir, m.group(1));
+      if (include.isFile())
+        addIncludes(include, files);
+    }
+  }
+
+  /**
+   * Adds a string and a separator to a digest.
+   *
+   * @param digest The digest.
+   * @param s The string.
+   */
+  private static void update(MessageDigest digest, String s) {
+    digest.update(s.getBytes(StandardCharsets.UTF_8));
+    digest.update((byte)0);
+  }
+
+
+  // ========================== Build Methods =======================
+
+  /**
+   * Builds an executable from the specified C++ files,
+   * compiling those not in the cache and linking the objects
+   * in the order of the files.
+   *
+   * @param sources The paths of the files, relative to the
+   * directory of the C++ files.
+   * @param target The name of the executable, written to the
+   * directory of the C++ files.
+   *
+   * @return <code>True</code> if the executable was built;
+   * <code>false</code> otherwise.
+   *
+   * @throws IOException Signals an I/O error.
+   */
+  public boolean build(List<String> sources, String target) throws IOException {
+    compiled = 0;
+    cached = 0;
+    if (!cache.isDirectory() && !cache.mkdirs())
+      throw new IOException("Cannot create directory " + cache.getPath());
+    version = run(Arrays.asList(compiler, "--version"), dir);
+    if (null == version) {
+      pcp.Translator.errConsole.p("Error running compiler: ").pln(compiler).flush();
+      return false;
+    }
+
+    // Look up each file and collect the missing objects
+    List<File> objects = new ArrayList<File>();
+    List<Callable<Boolean>> tasks = new ArrayList<Callable<Boolean>>();
+    Set<File> pending = new LinkedHashSet<File>();
+    for (final String source : sources) {
+      final File object = new File(cache, getKey(source) + ".o");
+      objects.add(object);
+      if (object.isFile()) {
+        cached++;
+      } else if (pending.add(object)) {
+        tasks.add(new Callable<Boolean>() {
+          public Boolean call() throws IOException {
+            return compile(source, object);
+          }
+        });
+      }
+    }
+
+    // Compile them in parallel
+    boolean ok = true;
+    ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(jobs, tasks.size())));
+    try {
+      for (Future<Boolean> f : pool.invokeAll(tasks)) {
+        if (f.get())
+          compiled++;
+        else
+          ok = false;
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    } catch (ExecutionException e) {
+      throw new IOException(e.getCause());
+    } finally {
+      pool.shutdown();
+    }
+    if (!ok)
+      return false;
+
+    // Link the objects in order
+    List<String> command = new ArrayList<String>();
+    command.add(compiler);
+    command.addAll(flags);
+    command.add("-o");
+    command.add(target);
+    for (File o : objects)
+      command.add(o.getAbsolutePath());
+    if (null == run(command, dir)) {
+      pcp.Translator.errConsole.p("Error linking: ").pln(target).flush();
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Compiles a file into the cache.  The object is written to a
+   * temporary file first and then moved to its key, so an
+   * interrupted or failed compile never leaves a partial object.
+   *
+   * @param source The path of the file.
+   * @param object The cached object.
+   *
+   * @return <code>True</code> if the file compiled;
+   * <code>false</code> otherwise.
+   *
+   * @throws IOException Signals an I/O error.
+   */
+  private boolean compile(String source, File object) throws IOException {
+    File temp = File.createTempFile(object.getName(), ".tmp", cache);
+    try {
+      List<String> command = new ArrayList<String>();
+      command.add(compiler);
+      command.addAll(flags);
+      command.add("-c");
+      command.add("-o");
+      command.add(temp.getAbsolutePath());
+      command.add(source);
+      if (null == run(command, dir)) {
+        synchronized (Builder.class) {
+          pcp.Translator.errConsole.p("Error compiling file: ").pln(source).flush();
+        }
+        return false;
+      }
+      Files.move(temp.toPath(), object.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                 StandardCopyOption.ATOMIC_MOVE);
+      return true;
+    } finally {
+      temp.delete();
+    }
+  }
+
+  /**
+   * Runs a command and waits for it.  If the command fails, its
+   * output is printed to the error console, which the compiling
+   * threads share, so printing locks the class.
+   *
+   * @param command The command and its arguments.
+   * @param cwd The working directory.
+   *
+   * @return The output of the command or <code>null</code> if it
+   * failed.
+   *
+   * @throws IOException Signals an I/O error.
+   */
+  private static String run(List<String> command, File cwd) throws IOException {
+    ProcessBuilder builder = new ProcessBuilder(command);
+    builder.directory(cwd);
+    builder.redirectErrorStream(true);
+    Process process;
+    try {
+      process = builder.start();
+    } catch (IOException e) {
+      return null;
+    }
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    InputStream in = process.getInputStream();
+    byte[] buffer = new byte[8192];
+    for (int n; -1 != (n = in.read(buffer)); )
+      output.write(buffer, 0, n);
+    in.close();
+    int status;
+    try {
+      status = process.waitFor();
+    } catch (InterruptedException e) {
+      process.destroy();
+      Thread.currentThread().interrupt();
+      return null;
+    }
+    String text = new String(output.toByteArray(), StandardCharsets.UTF_8);
+    if (0 != status) {
+      synchronized (Builder.class) {
+        pcp.Translator.errConsole.p(text).flush();
+      }
+      return null;
+    }
+    return text;
+  }
+
+}
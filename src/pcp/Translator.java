@@ -17,21 +17,35 @@
  */
 package pcp;
 
-import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FilenameFilter;
 import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.StandardOpenOption;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import pcp.translator.*;
 
@@ -62,6 +76,10 @@ public class Translator extends Tool {
   // The output directory
   private static final String OUTPUT_DIR = "output/";
 
+  // The files written for a unity build
+  private static final String UNITY = "unity.cc";
+  private static final String PCH = "pch.h";
+
   // Make the runtime consoles available to all the pcp classes
   public static Printer console;
   public static Printer errConsole;
@@ -72,6 +90,19 @@ public class Translator extends Tool {
   // The main file
   private File main;
 
+  // The C++ files written, in the order they should be linked
+  private List<String> sources = new ArrayList<String>();
+
+  // The index of the source files, when loading them on demand
+  private SourceIndex index;
+
+  // The stripped AST of each file, when writing summaries
+  private Map<JavaFile, GNode> stubs;
+
+  // The summaries of the packages resolved from them by path,
+  // when using summaries
+  private Map<String, PackageSummary> summaries;
+
 
   // =========================== Constructors =======================
 
@@ -124,7 +155,41 @@ public class Translator extends Tool {
     super.init();
     runtime.
     bool("printJavaAST", "printJavaAST", false, "Print Java AST.").
-    bool("translateJava", "translateJava", false, "Translate Java to C++.");
+    bool("translateJava", "translateJava", false, "Translate Java to C++.").
+    bool("collectCycles", "collectCycles", false,
+         "Emit pointer maps for the C++ cycle collector.").
+    bool("markSweep", "markSweep", false,
+         "Emit pointer maps and static roots for the C++ mark-sweep collector.").
+    bool("flattenArrays", "flattenArrays", false,
+         "Allocate rectangular 2-D arrays of primitives in one block.").
+    bool("splitClasses", "splitClasses", false,
+         "Write one C++ file per class and a Makefile building them.").
+    bool("unityBuild", "unityBuild", false,
+         "Write one C++ file with a precompiled header and a Makefile.").
+    bool("streamBodies", "streamBodies", false,
+         "Keep only signatures in memory and reparse each file as it is written.").
+    bool("printAttribution", "printAttribution", false,
+         "Print how many expressions were attributed and translated.").
+    bool("profileAllocations", "profileAllocations", false,
+         "Tag every allocation with its site for the C++ allocation profiler.").
+    bool("lineDirectives", "lineDirectives", false,
+         "Write #line directives mapping the C++ code to the Java source.").
+    bool("eliminateDeadCode", "eliminateDeadCode", false,
+         "Only write the classes and methods reachable from main.").
+    bool("loadOnDemand", "loadOnDemand", false,
+         "Only parse the files of other classes the code refers to.").
+    bool("writeSummaries", "writeSummaries", false,
+         "Write an interface summary of each package translated.").
+    bool("useSummaries", "useSummaries", false,
+         "Resolve other packages against their summaries and do not write them.").
+    bool("build", "build", false,
+         "Compile and link the C++ files, reusing cached objects.").
+    word("buildCache", "buildCache", false,
+         "Keep the objects compiled by -build in the specified directory.").
+    number("buildJobs", "buildJobs", 0,
+         "Run the specified number of compilers at once for -build.").
+    number("writeJobs", "writeJobs", 1,
+         "Write the specified number of packages at once.");
   }
 
   /**
@@ -157,18 +222,90 @@ public class Translator extends Tool {
           classpath = absPath; 
         }
 
+        // Set the translation options
+        JavaClass.setPointerMaps(runtime.test("collectCycles") ||
+                                 runtime.test("markSweep"));
+        JavaClass.setRootSets(runtime.test("markSweep"));
+        JavaExpression.setFlattenArrays(runtime.test("flattenArrays"));
+        JavaExpression.setProfileAllocations(runtime.test("profileAllocations"));
+        JavaStatement.setLineDirectives(runtime.test("lineDirectives"));
+        Reachability.setRecording(runtime.test("eliminateDeadCode"));
+        JavaPackage.setUnity(runtime.test("unityBuild"));
+        JavaFile.setStreaming(runtime.test("streamBodies"));
+
+        // Summarize the packages, or translate only the main package
+        // against the summaries of the others, if requested
+        if (runtime.test("writeSummaries")) {
+          stubs = new HashMap<JavaFile, GNode>();
+          stubs.put(c, PackageSummary.strip((GNode)node));
+        }
+        if (runtime.test("useSummaries")) {
+          if (runtime.test("unityBuild"))
+            runtime.errConsole().pln("Summaries are not used for unity builds").flush();
+          else
+            summaries = new LinkedHashMap<String, PackageSummary>();
+        }
+
         // Resolve dependencies
+        Map<String, Boolean> names = null;
+        if (runtime.test("loadOnDemand")) {
+          index = new SourceIndex();
+          SourceIndex.getReferences((GNode)node, names = new LinkedHashMap<String, Boolean>());
+        }
         c.setMain();
-        resolve(main, c);
+        resolve(main, c, names);
+
+        // Check the summaries used and add the arrays they record;
+        // code written against a stale summary would mislink, so
+        // nothing is written unless all of them are current
+        if (null != summaries) {
+          boolean current = true;
+          for (Map.Entry<String, PackageSummary> e : summaries.entrySet()) {
+            if (!e.getValue().check(JavaPackage.getJavaPackage(e.getKey())))
+              current = false;
+            for (Map.Entry<String, Integer> a : e.getValue().getArrayDimensions().entrySet())
+              JavaType.addArray(a.getKey(), a.getValue());
+          }
+          if (!current) {
+            runtime.error("summaries out of date; translate their packages again");
+            return;
+          }
+        }
+
+        // Find the code reachable from the main method
+        if (runtime.test("eliminateDeadCode"))
+          new Reachability().analyze(c);
+
+        // Attribute all the code before any of it is written
+        attribute();
         
         // Write the translated C++ code to files
         try {
           Set<String> keys = JavaPackage.getJavaPackageList();
-          for (String key : keys) {
-            JavaPackage.getJavaPackage(key).orderFiles();
-            writeHeader(JavaPackage.getJavaPackage(key));
-            writeBody(JavaPackage.getJavaPackage(key));
+          if (runtime.test("unityBuild"))
+            writeUnity();
+          else
+            writePackages();
+          if (null != stubs) {
+            for (String key : keys) {
+              if (!key.equals("") && (null == summaries || !summaries.containsKey(key)))
+                writeSummary(JavaPackage.getJavaPackage(key));
+            }
           }
+          if (runtime.test("splitClasses") || runtime.test("unityBuild"))
+            writeMakefile();
+          if (runtime.test("build")) {
+            if (null != summaries)
+              runtime.errConsole().pln("Programs translated against summaries are not built").flush();
+            else
+              build();
+          }
+
+          // Each expression is attributed once, however often it is written
+          if (runtime.test("printAttribution"))
+            runtime.console().p("Expressions created: ").p(JavaExpression.getExpressions())
+              .p(", attributed: ").p(JavaExpression.getAttributions())
+              .p(", translated: ").p(JavaExpression.getTranslations()).pln().flush();
         } catch (IOException i) {
           runtime.errConsole().p("Error writing file: ").pln(i.toString()).flush();
         }
@@ -241,7 +378,38 @@ public class Translator extends Tool {
   public void resolve(File file) throws IOException, ParseException {
     if (null != JavaFile.getJavaFile(file.getAbsolutePath())) 
       return;
-    resolve(file, new JavaFile((GNode)parse(file)));
+    String dir = file.getAbsoluteFile().getParent() + "/";
+    if (dir.startsWith(classpath) && dir.length() > classpath.length() &&
+        resolveSummary(dir.substring(classpath.length(), dir.length() - 1)))
+      return;
+    Map<String, Boolean> names = null;
+    if (null != index)
+      names = new LinkedHashMap<String, Boolean>();
+    resolve(file, load(file, names), names);
+  }
+
+  /**
+  * Parses the specified file and creates its compilation
+  * unit, collecting the names it refers to classes by if
+  * requested.  Only the compilation unit is kept.
+  *
+  * @param file The file to parse.
+  * @param names The names collected or <code>null</code>.
+  *
+  * @return The compilation unit.
+  *
+  * @throws IOException Signals an I/O error.
+  * @throws ParseException Signals a parse error.
+  */
+  private JavaFile load(File file, Map<String, Boolean> names)
+    throws IOException, ParseException {
+    GNode n = (GNode)parse(file);
+    if (null != names)
+      SourceIndex.getReferences(n, names);
+    JavaFile c = new JavaFile(n);
+    if (null != stubs)
+      stubs.put(c, PackageSummary.strip(n));
+    return c;
   }
   
   /**
@@ -249,45 +417,59 @@ public class Translator extends Tool {
   *
   * @param file The file to resolve.
   * @param c The compilation unit for the file.
+  * @param names The names the file refers to classes by, to
+  * only resolve the files declaring them, or <code>null</code>
+  * to resolve the whole package and imported packages.
   *
   * @throws IOException Signals an I/O error.
   * @throws ParseException Signals a parse error.
   */
-  public void resolve(File file, JavaFile c) throws IOException, ParseException {
+  public void resolve(File file, JavaFile c, Map<String, Boolean> names)
+    throws IOException, ParseException {
     if (null != JavaFile.getJavaFile(file.getAbsolutePath())) 
       return;
 
     // Add the file to the hash
     String filePath = file.getAbsolutePath();
     JavaFile.addFile(filePath, c);
+    c.setSource(file);
 
     // Add the file to the packages hash and
     // resolve dependencies for classes in the package
     JavaPackage pkg = c.getPackage();
     String pkgpath = pkg.getPath();
-    if (!pkgpath.equals("")) {
-      File dir = new File(classpath + pkgpath);
-      File[] files = dir.listFiles(new JavaFilter());
-      for (File fi : files) {
-        if (!fi.getAbsolutePath().equals(filePath))
-          resolve(fi);
-      }
-    }
-
-    // Resolve dependencies for imported classes
     Set<JavaPackage> imp = c.getImports();
-    for (JavaPackage i : imp) {
-      File f = new File(classpath + i.getPath());
-      if (f.isFile()) {
-        resolve(f);   
-      } else if (f.isDirectory()) {
-        File[] files = f.listFiles(new JavaFilter());
+    if (null != names) {
+      // Only resolve the files the code refers to
+      resolveReferences(c, names);
+    } else {
+      if (!pkgpath.equals("") && (null == summaries || !summaries.containsKey(pkgpath))) {
+        File dir = new File(classpath + pkgpath);
+        File[] files = dir.listFiles(new JavaFilter());
+        Arrays.sort(files);
         for (File fi : files) {
           if (!fi.getAbsolutePath().equals(filePath))
             resolve(fi);
         }
-      } else {
-        runtime.errConsole().p("Error reading imported file: ").p(f.getAbsolutePath()).pln().flush();
+      }
+
+      // Resolve dependencies for imported classes
+      for (JavaPackage i : imp) {
+        File f = new File(classpath + i.getPath());
+        if (resolveSummary(i.getPath())) {
+          continue;
+        } else if (f.isFile()) {
+          resolve(f);   
+        } else if (f.isDirectory()) {
+          File[] files = f.listFiles(new JavaFilter());
+          Arrays.sort(files);
+          for (File fi : files) {
+            if (!fi.getAbsolutePath().equals(filePath))
+              resolve(fi);
+          }
+        } else {
+          runtime.errConsole().p("Error reading imported file: ").p(f.getAbsolutePath()).pln().flush();
+        }
       }
     }
 
@@ -330,7 +512,7 @@ public class Translator extends Tool {
           }
           // Check the imports
           for (JavaPackage i : imp) {
-            extpath = classpath + i.getPath();
+            extpath = classpath + i.getPath() + "/" + ext;
             if (null != JavaFile.getJavaFile(extpath)) {
               cd.setParent(JavaFile.getJavaFile(extpath).getPublicClass());
               found = true;
@@ -343,6 +525,98 @@ public class Translator extends Tool {
         runtime.errConsole().p("Superclass not found: ").p(ext).pln().flush();
       }
     }
+
+    // Only keep the signatures until the file is written
+    c.release();
+  }
+
+  /**
+  * Resolves the files declaring the classes the specified
+  * file refers to, in its package and the imported packages,
+  * leaving the other files unparsed.  Simple names are looked
+  * up in the package before the imports, and qualified names
+  * in the directory of their package.
+  *
+  * @param c The compilation unit for the file.
+  * @param names The names the file refers to classes by.
+  *
+  * @throws IOException Signals an I/O error.
+  * @throws ParseException Signals a parse error.
+  */
+  private void resolveReferences(JavaFile c, Map<String, Boolean> names)
+    throws IOException, ParseException {
+    List<File> dirs = new ArrayList<File>();
+    if (!c.getPackage().getPath().equals(""))
+      dirs.add(new File(classpath + c.getPackage().getPath()));
+    for (JavaPackage i : c.getImports()) {
+      File f = new File(classpath + i.getPath());
+      if (resolveSummary(i.getPath()))
+        continue;
+      if (f.isDirectory())
+        dirs.add(f);
+      else
+        runtime.errConsole().p("Error reading imported file: ").p(f.getAbsolutePath()).pln().flush();
+    }
+
+    for (Map.Entry<String, Boolean> e : names.entrySet()) {
+      String name = e.getKey();
+      File f = null;
+      int dot = name.lastIndexOf('.');
+      if (-1 < dot) {
+        File dir = new File(classpath + name.substring(0, dot).replace('.', '/'));
+        f = index.find(dir, name.substring(dot + 1), false);
+      } else if (null == c.getJavaClass(name)) {
+        for (File dir : dirs) {
+          if (null != (f = index.find(dir, name, false)))
+            break;
+        }
+        for (int i = 0; null == f && e.getValue() && i < dirs.size(); i++)
+          f = index.find(dirs.get(i), name, true);
+      }
+      if (null != f)
+        resolve(f);
+    }
+  }
+
+
+  /**
+  * Resolves a package from its summary in the output directory
+  * instead of its sources, if summaries are used and there is
+  * one.  The package of the main file is always resolved from
+  * its sources.  Each file of the summary is resolved under the
+  * path of its source file.
+  *
+  * @param pkgpath The path of the package.
+  *
+  * @return <code>True</code> if the package is resolved from
+  * its summary; <code>false</code> otherwise.
+  *
+  * @throws IOException Signals an I/O error.
+  * @throws ParseException Signals a parse error.
+  */
+  private boolean resolveSummary(String pkgpath) throws IOException, ParseException {
+    if (null == summaries || pkgpath.equals("") ||
+        pkgpath.equals(JavaFile.getJavaFile(main.getAbsolutePath()).getPackage().getPath()))
+      return false;
+    if (summaries.containsKey(pkgpath))
+      return true;
+    File file = new File(OUTPUT_DIR + pkgpath.replace('/', '_') + ".summary");
+    if (!file.isFile())
+      return false;
+
+    PackageSummary summary = new PackageSummary(file);
+    summaries.put(pkgpath, summary);
+    for (Map.Entry<String, String> e : summary.getFiles().entrySet()) {
+      File source = new File(classpath + pkgpath, e.getKey());
+      if (null != JavaFile.getJavaFile(source.getAbsolutePath()))
+        continue;
+      GNode n = (GNode)parse(new StringReader(e.getValue()), file);
+      Map<String, Boolean> names = null;
+      if (null != index)
+        SourceIndex.getReferences(n, names = new LinkedHashMap<String, Boolean>());
+      resolve(source, new JavaFile(n), names);
+    }
+    return true;
   }
 
 
@@ -368,6 +642,101 @@ public class Translator extends Tool {
 
   }
 
+  /**
+  * A writer that encodes the translated code into a large
+  * direct buffer and writes the buffer to the file channel
+  * only when it fills up or the writer is closed.
+  */
+  static class ChannelWriter extends Writer {
+
+    // The size of the output buffer
+    private static final int CAPACITY = 1 << 20;
+
+    // The channel to the file
+    private final FileChannel channel;
+
+    // The encoded characters not yet written
+    private final ByteBuffer buffer;
+
+    // The encoder for the characters
+    private final CharsetEncoder encoder;
+
+    /**
+    * Creates the writer, creating or truncating the file.
+    *
+    * @param file The file.
+    *
+    * @throws IOException Signals an I/O error.
+    */
+    public ChannelWriter(File file) throws IOException {
+      channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                                 StandardOpenOption.TRUNCATE_EXISTING,
+                                 StandardOpenOption.WRITE);
+      buffer = ByteBuffer.allocateDirect(CAPACITY);
+      encoder = Charset.defaultCharset().newEncoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    /**
+    * Encodes the characters into the buffer, writing the
+    * buffer out whenever it is full.
+    *
+    * @param cbuf The characters.
+    * @param off The offset of the first character.
+    * @param len The number of characters.
+    *
+    * @throws IOException Signals an I/O error.
+    */
+    public void write(char[] cbuf, int off, int len) throws IOException {
+      CharBuffer in = CharBuffer.wrap(cbuf, off, len);
+      while (encoder.encode(in, buffer, false).isOverflow()) {
+        drain();
+      }
+    }
+
+    /**
+    * Writes the buffered bytes to the file.
+    *
+    * @throws IOException Signals an I/O error.
+    */
+    public void flush() throws IOException {
+      drain();
+    }
+
+    /**
+    * Writes the remaining bytes and closes the file.
+    *
+    * @throws IOException Signals an I/O error.
+    */
+    public void close() throws IOException {
+      if (!channel.isOpen())
+        return;
+      while (encoder.encode(CharBuffer.allocate(0), buffer, true).isOverflow()) {
+        drain();
+      }
+      while (encoder.flush(buffer).isOverflow()) {
+        drain();
+      }
+      drain();
+      channel.close();
+    }
+
+    /**
+    * Writes the buffer to the channel and clears it.
+    *
+    * @throws IOException Signals an I/O error.
+    */
+    private void drain() throws IOException {
+      buffer.flip();
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+      buffer.clear();
+    }
+
+  }
+
 
   // ======================= Translation Methods ====================
 
@@ -381,13 +750,135 @@ public class Translator extends Tool {
    *
    * @throws IOException Signals an I/O error.
    */
-  public BufferedWriter createFile(String name) throws IOException {
+  public Writer createFile(String name) throws IOException {
     File file = new File(OUTPUT_DIR + name);
     if (file.exists()) {
       file.delete();
     }
-    file.createNewFile();
-    return new BufferedWriter(new FileWriter(file));
+    return new ChannelWriter(file);
+  }
+
+  /**
+   * Attributes the code of every file not resolved from a
+   * summary, so that the types of all expressions, the methods
+   * they call, and the arrays they use are known before any
+   * package is written.  Methods removed by dead code
+   * elimination are not attributed.
+   */
+  public void attribute() {
+    for (String key : JavaPackage.getJavaPackageList()) {
+      if (null != summaries && summaries.containsKey(key))
+        continue;
+      for (JavaFile f : JavaPackage.getJavaPackage(key).getFiles())
+        f.attribute();
+    }
+    JavaExpression.setFrozen(true);
+  }
+
+  /**
+   * Writes the header and body of each package not resolved
+   * from a summary, on a pool of -writeJobs threads.  All code
+   * has been attributed by then, so the types, the methods
+   * called, and the arrays used are fixed.  The vtables of all
+   * classes are built and the files and classes of all
+   * packages are ordered first as well, as the code of one
+   * package looks up the methods of others, and its header
+   * declares their classes in order.  The packages then only
+   * read what they share, so every run writes the same files
+   * whatever the number of threads.
+   *
+   * @throws IOException Signals an I/O error.
+   */
+  public void writePackages() throws IOException {
+    List<JavaPackage> pkgs = new ArrayList<JavaPackage>();
+    for (String key : JavaPackage.getJavaPackageList()) {
+      JavaPackage pkg = JavaPackage.getJavaPackage(key);
+      for (JavaFile f : pkg.getFiles()) {
+        for (JavaClass cls : f.getClasses())
+          cls.getVTable();
+      }
+      if (null == summaries || !summaries.containsKey(key))
+        pkgs.add(pkg);
+    }
+    int jobs = Math.max(1, runtime.getInt("writeJobs"));
+
+    // Order the files of each package
+    List<Callable<List<String>>> tasks = new ArrayList<Callable<List<String>>>();
+    for (final JavaPackage pkg : pkgs) {
+      tasks.add(new Callable<List<String>>() {
+        public List<String> call() {
+          pkg.orderFiles();
+          return null;
+        }
+      });
+    }
+    invokeAll(tasks, jobs);
+
+    // Write each package, keeping the files in package order
+    tasks.clear();
+    for (final JavaPackage pkg : pkgs) {
+      tasks.add(new Callable<List<String>>() {
+        public List<String> call() throws IOException {
+          writeHeader(pkg);
+          return writeBody(pkg);
+        }
+      });
+    }
+    for (List<String> names : invokeAll(tasks, jobs))
+      sources.addAll(names);
+  }
+
+  /**
+   * Runs the specified tasks on a pool of threads, or in
+   * this thread if there is only one.
+   *
+   * @param tasks The tasks.
+   * @param jobs The number of threads.
+   *
+   * @return The results of the tasks, in order.
+   *
+   * @throws IOException Signals an I/O error.
+   */
+  private <T> List<T> invokeAll(List<Callable<T>> tasks, int jobs) throws IOException {
+    List<T> results = new ArrayList<T>();
+    ExecutorService pool = 1 == jobs ? null : Executors.newFixedThreadPool(jobs);
+    try {
+      if (null == pool) {
+        for (Callable<T> task : tasks)
+          results.add(task.call());
+      } else {
+        for (Future<T> f : pool.invokeAll(tasks))
+          results.add(f.get());
+      }
+    } catch (ExecutionException e) {
+      rethrow(e.getCause());
+    } catch (Exception e) {
+      rethrow(e);
+    } finally {
+      if (null != pool)
+        pool.shutdown();
+    }
+    return results;
+  }
+
+  /**
+   * Throws the specified exception again, wrapping it in an
+   * I/O exception if it is checked.
+   *
+   * @param t The exception.
+   *
+   * @throws IOException Signals an I/O error.
+   */
+  private static void rethrow(Throwable t) throws IOException {
+    if (t instanceof IOException)
+      throw (IOException)t;
+    if (t instanceof RuntimeException)
+      throw (RuntimeException)t;
+    if (t instanceof Error)
+      throw (Error)t;
+    if (t instanceof InterruptedException)
+      Thread.currentThread().interrupt();
+    throw new IOException(t);
   }
 
   /**
@@ -396,19 +887,46 @@ public class Translator extends Tool {
    *
    * @param pkg The package.
    *
+   * @return The names of the files written.
+   *
    * @throws IOException Signals an I/O error.
    */
-  public void writeBody(JavaPackage pkg) throws IOException {
+  public List<String> writeBody(JavaPackage pkg) throws IOException {
+    List<String> names = new ArrayList<String>();
+
+    // Write each class into its own cc file if requested
+    if (runtime.test("splitClasses")) {
+      for (JavaFile f : pkg.getFiles()) {
+        f.load();
+        for (JavaClass cls : f.getClasses()) {
+          if (!cls.isReachable()) {
+            cls.release();
+            continue;
+          }
+          String name = pkg.getFilename() + "." + cls.getName() + ".cc";
+          Writer output = createFile(name);
+          Printer printer = new FilePrinter(output, name);
+          pkg.translate(printer, cls);
+          output.flush();
+          output.close();
+          names.add(name);
+        }
+      }
+      return names;
+    }
+
     // Create the cc file
-    BufferedWriter output = createFile(pkg.getFilename() + ".cc");
+    Writer output = createFile(pkg.getFilename() + ".cc");
 
     // Translate the body of the package
-    Printer printer = new Printer(output);
+    Printer printer = new FilePrinter(output, pkg.getFilename() + ".cc");
     pkg.translate(printer);
 
     // Save the translated code into the file
     output.flush();
     output.close();
+    names.add(pkg.getFilename() + ".cc");
+    return names;
   }
 
   /**
@@ -421,7 +939,7 @@ public class Translator extends Tool {
    */
   public void writeHeader(JavaPackage pkg) throws IOException {
     // Create the header file
-    BufferedWriter output = createFile(pkg.getFilename() + ".h");
+    Writer output = createFile(pkg.getFilename() + ".h");
 
     // Translate the header of the package
     Printer printer = new Printer(output);
@@ -432,6 +950,213 @@ public class Translator extends Tool {
     output.close();
   }
 
+  /**
+   * Writes the interface summary of the specified package
+   * to a file.
+   *
+   * @param pkg The package.
+   *
+   * @throws IOException Signals an I/O error.
+   */
+  public void writeSummary(JavaPackage pkg) throws IOException {
+    Writer output = createFile(pkg.getFilename() + ".summary");
+    Printer printer = new Printer(output);
+    PackageSummary.write(pkg, stubs, printer);
+    output.flush();
+    output.close();
+  }
+
+  /**
+   * Writes all packages into a single C++ file, with the
+   * headers of imported packages before the packages
+   * importing them, followed by the runtime sources.
+   * Also writes the header to precompile for it.
+   *
+   * @throws IOException Signals an I/O error.
+   */
+  public void writeUnity() throws IOException {
+    // Order the packages by their imports
+    List<JavaPackage> pkgs = new ArrayList<JavaPackage>();
+    Set<JavaPackage> visited = new HashSet<JavaPackage>();
+    for (String key : JavaPackage.getJavaPackageList()) {
+      JavaPackage.getJavaPackage(key).orderFiles();
+      orderPackage(JavaPackage.getJavaPackage(key), pkgs, visited);
+    }
+
+    // The precompiled header holds the runtime headers
+    Writer output = createFile(PCH);
+    Printer out = new Printer(output);
+    out.pln("#pragma once").pln();
+    out.pln("#include <iostream>");
+    out.pln("#include <sstream>").pln();
+    JavaClass.translateCollectorCheck(out);
+    out.pln("#include \"include/java_lang.h\"");
+    output.flush();
+    output.close();
+
+    // The unity file includes the runtime sources and all packages
+    output = createFile(UNITY);
+    out = new FilePrinter(output, UNITY);
+    out.p("#include \"").p(PCH).pln("\"").pln();
+    for (String source : getRuntimeSources()) {
+      out.p("#include \"").p(source).pln("\"");
+    }
+    out.pln().pln("using namespace java::lang;").pln();
+    for (JavaPackage pkg : pkgs) {
+      pkg.translateHeader(out);
+    }
+    for (JavaPackage pkg : pkgs) {
+      pkg.translateArrayTemplates(out);
+    }
+    for (JavaPackage pkg : pkgs) {
+      pkg.translate(out).pln();
+    }
+    output.flush();
+    output.close();
+    sources.add(UNITY);
+  }
+
+  /**
+   * Adds a package to the list after the packages it
+   * imports.
+   *
+   * @param pkg The package.
+   * @param pkgs The ordered packages.
+   * @param visited The packages already visited.
+   */
+  private void orderPackage(JavaPackage pkg, List<JavaPackage> pkgs,
+                            Set<JavaPackage> visited) {
+    if (!visited.add(pkg))
+      return;
+    for (JavaPackage i : pkg.getImports()) {
+      orderPackage(i, pkgs, visited);
+    }
+    pkgs.add(pkg);
+  }
+
+  /**
+   * Gets the runtime sources in the output directory.
+   *
+   * @return The paths of the runtime sources.
+   */
+  private List<String> getRuntimeSources() {
+    List<String> runtimeSources = new ArrayList<String>();
+    File[] runtimeFiles = new File(OUTPUT_DIR + "include").listFiles();
+    if (null != runtimeFiles) {
+      Arrays.sort(runtimeFiles);
+      for (File f : runtimeFiles) {
+        if (f.getName().endsWith(".cc"))
+          runtimeSources.add("include/" + f.getName());
+      }
+    }
+    return runtimeSources;
+  }
+
+  /**
+   * Writes a Makefile compiling every C++ file written
+   * and the runtime into an executable named after the
+   * main class.  The objects are listed in the order
+   * the files were written, which is also the order of
+   * static initialization.
+   *
+   * @throws IOException Signals an I/O error.
+   */
+  public void writeMakefile() throws IOException {
+    List<String> objects = new ArrayList<String>();
+    for (String source : sources) {
+      objects.add(source.substring(0, source.length() - 3) + ".o");
+    }
+    boolean unity = runtime.test("unityBuild");
+    if (!unity) {
+      for (String source : getRuntimeSources()) {
+        objects.add(source.substring(0, source.length() - 3) + ".o");
+      }
+    }
+    String target = main.getName().substring(0, main.getName().lastIndexOf("."));
+
+    // Make expands $, so escape it; the recipes quote the file names
+    // to keep the shell from expanding it again
+    Writer output = createFile("Makefile");
+    Printer out = new Printer(output);
+    out.pln("# Generated by pcp; run make -j to compile in parallel.");
+    out.pln();
+    out.pln("CXXFLAGS ?= -w -O2");
+    if (null != JavaClass.getCollectorDefine())
+      out.p("CXXFLAGS += -D").pln(JavaClass.getCollectorDefine());
+    out.pln();
+    out.p("OBJECTS =");
+    for (String o : objects) {
+      out.pln(" \\").p("  ").p(o.replace("$", "$$"));
+    }
+    out.pln().pln();
+    out.p(target).pln(": $(OBJECTS)");
+    out.pln("\t$(CXX) $(CXXFLAGS) $(LDFLAGS) -o '$@' $(patsubst %,'%',$(OBJECTS))");
+    out.pln();
+    out.pln("%.o: %.cc");
+    out.pln("\t$(CXX) $(CXXFLAGS) -MMD -MP -c -o '$@' '$<'");
+    out.pln();
+    if (unity) {
+      out.p(PCH).p(".gch: ").p(PCH).pln(" include/java_lang.h include/ptr.h");
+      out.pln("\t$(CXX) $(CXXFLAGS) -x c++-header -o '$@' '$<'");
+      out.pln();
+      out.p(UNITY.replace(".cc", ".o")).p(": ").p(PCH).pln(".gch");
+      out.pln();
+    }
+    out.pln("clean:");
+    out.p("\trm -f ").p(target);
+    if (unity)
+      out.p(" ").p(PCH).p(".gch");
+    out.pln(" $(patsubst %,'%',$(OBJECTS) $(OBJECTS:.o=.d))");
+    out.pln();
+    out.pln(".PHONY: clean");
+    out.pln();
+    out.pln("-include $(OBJECTS:.o=.d)");
+    output.flush();
+    output.close();
+  }
+
+  /**
+   * Compiles every C++ file written and the runtime through
+   * the object cache and links the executable named after the
+   * main class.  The compiler and its flags are taken from the
+   * CXX and CXXFLAGS environment variables, with the defaults
+   * of the Makefile.
+   *
+   * @throws IOException Signals an I/O error.
+   */
+  public void build() throws IOException {
+    List<String> units = new ArrayList<String>(sources);
+    if (!runtime.test("unityBuild"))
+      units.addAll(getRuntimeSources());
+    String target = main.getName().substring(0, main.getName().lastIndexOf("."));
+
+    String compiler = System.getenv("CXX");
+    if (null == compiler || compiler.trim().isEmpty())
+      compiler = "g++";
+    String cxxflags = System.getenv("CXXFLAGS");
+    if (null == cxxflags)
+      cxxflags = "-w -O2";
+    List<String> flags = new ArrayList<String>();
+    for (String flag : cxxflags.trim().split("\\s+")) {
+      if (!flag.isEmpty())
+        flags.add(flag);
+    }
+    if (null != JavaClass.getCollectorDefine())
+      flags.add("-D" + JavaClass.getCollectorDefine());
+    File cache = runtime.hasValue("buildCache") ?
+      new File(runtime.getString("buildCache")) :
+      new File(System.getProperty("user.home"), ".cache/pcp");
+    int jobs = runtime.getInt("buildJobs");
+    if (0 >= jobs)
+      jobs = java.lang.Runtime.getRuntime().availableProcessors();
+
+    Builder builder = new Builder(new File(OUTPUT_DIR), cache, compiler.trim(), flags, jobs);
+    if (builder.build(units, target))
+      runtime.console().p("Built ").p(OUTPUT_DIR).p(target).p(": ")
+        .p(builder.getCompiled()).p(" compiled, ").p(builder.getCached())
+        .pln(" cached").flush();
+  }
+
 
   // ========================== Main Method =========================
 
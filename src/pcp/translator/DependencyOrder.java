@@ -0,0 +1,213 @@
+/*
+ * pcp - The Producer of C++ Programs
+ * Copyright (C) 2011 Nabil Hassein, Thomas Huston, Mike Morreale, Marta Wilgan
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package pcp.translator;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A topological sort of classes or files by their dependencies.
+ * Each node is placed after the nodes it depends on, and otherwise
+ * keeps its original position, so the order only changes where a
+ * dependency requires it.  There are two kinds of dependencies:
+ * hard ones, such as a superclass, which must come first, and
+ * references from static initializers, which should come first
+ * unless that contradicts a hard dependency.  The sort walks the
+ * graph depth first using identity sets, drops a reference to
+ * break a cycle where it can, and reports the other cycles.
+ *
+ * @author Nabil Hassein
+ * @author Thomas Huston
+ * @author Mike Morreale
+ * @author Marta Wilgan
+ *
+ * @version 2.1.1
+ */
+abstract class DependencyOrder<T> {
+
+  // What is being ordered, used when reporting cycles
+  private String kind;
+
+  /**
+   * Creates a new ordering.
+   *
+   * @param kind What is being ordered, for example "classes".
+   */
+  public DependencyOrder(String kind) {
+    this.kind = kind;
+  }
+
+
+  // ========================= Abstract Methods =====================
+
+  /**
+   * Gets the nodes that must come before the specified node.
+   * Nodes that are not being ordered are ignored.
+   *
+   * @param node The node.
+   *
+   * @return The dependencies.
+   */
+  protected abstract Collection<T> getDependencies(T node);
+
+  /**
+   * Gets the nodes that should come before the specified node
+   * if the hard dependencies allow it.  Nodes that are not
+   * being ordered are ignored.
+   *
+   * @param node The node.
+   *
+   * @return The references.
+   */
+  protected abstract Collection<T> getReferences(T node);
+
+  /**
+   * Gets the name of a node for reporting cycles.
+   *
+   * @param node The node.
+   *
+   * @return The name.
+   */
+  protected abstract String getName(T node);
+
+
+  // ========================== Order Methods =======================
+
+  /**
+   * Orders the nodes so that each comes after its dependencies.
+   *
+   * @param nodes The nodes in their original order.
+   *
+   * @return The ordered nodes.
+   */
+  public List<T> order(List<T> nodes) {
+    Set<T> members = identitySet();
+    members.addAll(nodes);
+    Set<T> active = identitySet();
+    Set<T> done = identitySet();
+    List<T> result = new ArrayList<T>(nodes.size());
+
+    // The path of the depth-first search, the remaining hard
+    // dependencies and references of each node on it, and
+    // whether the node was reached through a reference
+    List<T> path = new ArrayList<T>();
+    List<Iterator<T>> hard = new ArrayList<Iterator<T>>();
+    List<Iterator<T>> soft = new ArrayList<Iterator<T>>();
+    List<Boolean> referenced = new ArrayList<Boolean>();
+
+    for (T root : nodes) {
+      if (done.contains(root))
+        continue;
+      push(root, false, path, hard, soft, referenced, active);
+      while (!path.isEmpty()) {
+        int top = path.size() - 1;
+        boolean isReference = !hard.get(top).hasNext();
+        Iterator<T> deps = isReference ? soft.get(top) : hard.get(top);
+        if (deps.hasNext()) {
+          T dep = deps.next();
+          if (!members.contains(dep) || done.contains(dep))
+            continue;
+          if (active.contains(dep)) {
+            int first = path.indexOf(dep);
+            // A cycle of references only is legal Java, though the
+            // classes are then initialized in an arbitrary order
+            if (isReference) {
+              if (!referenced.subList(first + 1, path.size()).contains(Boolean.FALSE))
+                reportCycle(path.subList(first, path.size()), "static initialization");
+              continue;
+            }
+            // Drop the last reference on the cycle if there is one
+            int last = referenced.lastIndexOf(Boolean.TRUE);
+            if (last > first) {
+              while (path.size() > last)
+                pop(path, hard, soft, referenced, active);
+              continue;
+            }
+            reportCycle(path.subList(first, path.size()), "dependency");
+            continue;
+          }
+          push(dep, isReference, path, hard, soft, referenced, active);
+        } else {
+          T node = pop(path, hard, soft, referenced, active);
+          done.add(node);
+          result.add(node);
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Pushes a node onto the path of the search.
+   */
+  private void push(T node, boolean isReference, List<T> path,
+                    List<Iterator<T>> hard, List<Iterator<T>> soft,
+                    List<Boolean> referenced, Set<T> active) {
+    path.add(node);
+    hard.add(getDependencies(node).iterator());
+    soft.add(getReferences(node).iterator());
+    referenced.add(isReference);
+    active.add(node);
+  }
+
+  /**
+   * Pops the last node off the path of the search.
+   *
+   * @return The node.
+   */
+  private T pop(List<T> path, List<Iterator<T>> hard, List<Iterator<T>> soft,
+                List<Boolean> referenced, Set<T> active) {
+    int top = path.size() - 1;
+    T node = path.remove(top);
+    hard.remove(top);
+    soft.remove(top);
+    referenced.remove(top);
+    active.remove(node);
+    return node;
+  }
+
+  /**
+   * Reports a dependency cycle.
+   *
+   * @param cycle The nodes on the cycle, in order.
+   * @param what The kind of cycle.
+   */
+  private void reportCycle(List<T> cycle, String what) {
+    StringBuilder s = new StringBuilder();
+    for (T node : cycle)
+      s.append(getName(node)).append(" -> ");
+    s.append(getName(cycle.get(0)));
+    pcp.Translator.errConsole.p("Cyclic ").p(what).p(" between ").p(kind).p(": ")
+      .pln(s.toString()).flush();
+  }
+
+  /**
+   * Creates an empty set that compares nodes by identity.
+   *
+   * @return The set.
+   */
+  private Set<T> identitySet() {
+    return Collections.newSetFromMap(new IdentityHashMap<T, Boolean>());
+  }
+
+}
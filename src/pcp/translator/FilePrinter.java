@@ -0,0 +1,67 @@
+/*
+ * pcp - The Producer of C++ Programs
+ * Copyright (C) 2011 Nabil Hassein, Thomas Huston, Mike Morreale, Marta Wilgan
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package pcp.translator;
+
+import java.io.Writer;
+
+import xtc.tree.Printer;
+
+/**
+ * A printer writing one C++ file, which knows the name of
+ * the file so that <code>#line</code> directives can point
+ * back to it after the code translated from a method.
+ *
+ * @author Nabil Hassein
+ * @author Thomas Huston
+ * @author Mike Morreale
+ * @author Marta Wilgan
+ *
+ * @version 2.1.1
+ */
+public class FilePrinter extends Printer {
+
+  // The name of the file relative to the output directory
+  private String filename;
+
+
+  // =========================== Constructors =======================
+
+  /**
+   * Creates a new printer.
+   *
+   * @param out The writer for the file.
+   * @param filename The name of the file.
+   */
+  public FilePrinter(Writer out, String filename) {
+    super(out);
+    this.filename = filename;
+  }
+
+
+  // ============================ Get Methods =======================
+
+  /**
+   * Gets the name of the file.
+   *
+   * @return The name.
+   */
+  public String getFilename() {
+    return filename;
+  }
+
+}
@@ -18,10 +18,8 @@
 package pcp.translator;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 
 import xtc.tree.GNode;
@@ -46,6 +44,10 @@ public class JavaBlock extends Visitor implements Scope, Translatable {
 
   // If this is a method, keep a reference to the method object
   private JavaMethod method;
+
+  // The class and method/constructor enclosing the block
+  private JavaClass enclosingClass;
+  private JavaMethod enclosingMethod;
   
   // The type of block (constructor, method, or block)
   private String name;
@@ -57,7 +59,7 @@ public class JavaBlock extends Visitor implements Scope, Translatable {
   private List<JavaStatement> statements;
 
   // The variables declared in this scope
-  private Map<String, JavaType> variables;
+  private SymbolTable variables;
 
   
   // =========================== Constructors =======================
@@ -83,8 +85,12 @@ public class JavaBlock extends Visitor implements Scope, Translatable {
     // Set the parent scope
     this.parent = parent;
 
-    // Initialize the variable map
-    variables = new HashMap<String, JavaType>();
+    // Link the enclosing class and method
+    enclosingClass = parent.getEnclosingClass();
+    enclosingMethod = null != method ? method : parent.getEnclosingMethod();
+
+    // Initialize the variable table
+    variables = new SymbolTable();
 
     // Set the scope name
     if (null != method) {
@@ -101,7 +107,7 @@ public class JavaBlock extends Visitor implements Scope, Translatable {
       // Add the method/constructor parameters to the scope
       Set<String> params = parameters.keySet();
       for (String param : params) {
-        variables.put(param, parameters.get(param));
+        variables.put(Symbol.intern(param), parameters.get(param));
       }
     } else {
       name = "JavaBlock";
@@ -151,6 +157,24 @@ public class JavaBlock extends Visitor implements Scope, Translatable {
     return method;
   }
 
+  /**
+   * Gets the class enclosing the block.
+   *
+   * @return The class.
+   */
+  public JavaClass getEnclosingClass() {
+    return enclosingClass;
+  }
+
+  /**
+   * Gets the method or constructor enclosing the block.
+   *
+   * @return The method.
+   */
+  public JavaMethod getEnclosingMethod() {
+    return enclosingMethod;
+  }
+
   /**
    * Gets the parent scope.
    *
@@ -163,29 +187,29 @@ public class JavaBlock extends Visitor implements Scope, Translatable {
   /**
    * Gets the scope in which the specified variable is declared.
    *
-   * @param name The name of the variable.
+   * @param symbol The symbol of the variable.
    *
    * @return The scope of the variable if it exists;
    * <code>null</code> otherwise.
    */
-  public Scope getVariableScope(String name) {
-    if (variables.containsKey(name))
+  public Scope getVariableScope(int symbol) {
+    if (variables.contains(symbol))
       return this;
-    return parent.getVariableScope(name);
+    return parent.getVariableScope(symbol);
   }
 
   /**
    * Gets the type of the specified variable.
    *
-   * @param name The name of the variable.
+   * @param symbol The symbol of the variable.
    *
    * @return The type if the variable exists;
    * <code>null</code> otherwise.
    */
-  public JavaType getVariableType(String name) {
-    if (variables.containsKey(name))
-      return variables.get(name);
-    return parent.getVariableType(name);
+  public JavaType getVariableType(int symbol) {
+    if (variables.contains(symbol))
+      return variables.get(symbol);
+    return parent.getVariableType(symbol);
   }
 
   /**
@@ -203,23 +227,27 @@ public class JavaBlock extends Visitor implements Scope, Translatable {
   /**
    * Checks if a variable is currently in scope.
    *
+   * @param symbol The symbol of the variable.
+   *
    * @return <code>True</code> if the variable is in scope;
    * <code>false</code> otherwise.
    */
-  public boolean isInScope(String name) {
-    if (variables.containsKey(name))
+  public boolean isInScope(int symbol) {
+    if (variables.contains(symbol))
       return true;
-    return parent.isInScope(name);
+    return parent.isInScope(symbol);
   }
 
   /**
    * Checks if the specified variable is static.
    *
+   * @param symbol The symbol of the variable.
+   *
    * @return <code>True</code> if the variable is static;
    * <code>false</code> otherwise.
    */
-  public boolean isVariableStatic(String name) {
-    return parent.isVariableStatic(name);
+  public boolean isVariableStatic(int symbol) {
+    return parent.isVariableStatic(symbol);
   }
 
 
@@ -228,15 +256,23 @@ public class JavaBlock extends Visitor implements Scope, Translatable {
   /**
    * Adds a variable to the scope.
    *
-   * @param name The name of the variable.
+   * @param symbol The symbol of the variable.
    * @param type The type of the variable.
    */
-  public void addVariable(String name, JavaType type) {
-    variables.put(name, type);
+  public void addVariable(int symbol, JavaType type) {
+    variables.put(symbol, type);
   }
 
 
   // ======================== Translation Methods ===================
+
+  /**
+   * Attributes the expressions of the statements in the block.
+   */
+  public void attribute() {
+    for (JavaStatement s : statements)
+      s.attribute();
+  }
   
   /**
    * Translates the block and adds it 
@@ -19,7 +19,7 @@ package pcp.translator;
 
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -41,9 +41,15 @@ import xtc.tree.Visitor;
  */
 public class JavaClass extends Visitor implements Scope, Translatable {
   
-  // A map from class names to the corresponding class objects
+  // A map from fully qualified class names to the corresponding class objects
   private static Map<String, JavaClass> classes = new HashMap<String, JavaClass>();
 
+  // Whether to emit the pointer maps used by the collectors
+  private static boolean pointerMaps;
+
+  // Whether to emit the static root sets used by the mark-sweep collector
+  private static boolean rootSets;
+
   // The constructors for the class
   private List<JavaConstructor> constructors;
 
@@ -59,6 +65,9 @@ public class JavaClass extends Visitor implements Scope, Translatable {
   // Keeps track of final/static status
   private boolean isFinal, isStatic;
 
+  // Whether the class is reachable from the main method
+  private boolean isReachable = true;
+
   // The methods in the class
   private List<JavaMethod> methods;
 
@@ -68,14 +77,17 @@ public class JavaClass extends Visitor implements Scope, Translatable {
   // The superclass
   private JavaClass parent;
 
+  // What the field initializers use, recorded for dead code elimination
+  private Reachability.Uses uses;
+
   // The variables declared in this scope
-  private Map<String, JavaType> variables;
+  private SymbolTable variables;
 
   // The visibility of the class
   private JavaVisibility visibility;
 
   // The vtable for the class
-  private LinkedHashMap<String, JavaMethod> vtable;
+  private VTable vtable;
 
 
   // =========================== Constructors =======================
@@ -91,7 +103,7 @@ public class JavaClass extends Visitor implements Scope, Translatable {
     file = f;
 
     // Initialize the variable table
-    variables = new HashMap<String, JavaType>();
+    variables = new SymbolTable();
 
     // Get the class name
     name = n.getString(1);
@@ -137,6 +149,22 @@ public class JavaClass extends Visitor implements Scope, Translatable {
     return file;
   }
 
+  /**
+   * Gets the classes whose static state the static field
+   * initializers use, which should be initialized first.
+   *
+   * @return The classes.
+   */
+  public Set<JavaClass> getReferences() {
+    Set<JavaClass> references = new LinkedHashSet<JavaClass>();
+    for (JavaField f : fields) {
+      if (f.isStatic())
+        references.addAll(f.getReferences());
+    }
+    references.remove(this);
+    return references;
+  }
+
   /**
    * Gets a list of the class fields.
    *
@@ -146,6 +174,36 @@ public class JavaClass extends Visitor implements Scope, Translatable {
     return fields;
   }
 
+  /**
+   * Gets a list of the constructors written for the class.
+   *
+   * @return The constructors.
+   */
+  public List<JavaConstructor> getConstructors() {
+    return constructors;
+  }
+
+  /**
+   * Gets a list of the class methods.
+   *
+   * @return The methods.
+   */
+  public List<JavaMethod> getMethods() {
+    return methods;
+  }
+
+  /**
+   * Gets what the field initializers use, once they have
+   * been attributed.
+   *
+   * @return The uses.
+   */
+  Reachability.Uses getUses() {
+    if (null == uses)
+      uses = new Reachability.Uses();
+    return uses;
+  }
+
   /**
    * Gets the constructor with the specified name if it exists.
    *
@@ -203,8 +261,9 @@ public class JavaClass extends Visitor implements Scope, Translatable {
   public JavaMethod getMethod(String name, boolean current) {
     if (null == vtable)
       initializeVTable();
-    if (vtable.containsKey(name))
-      return vtable.get(name);
+    JavaMethod virtual = vtable.get(name);
+    if (null != virtual)
+      return virtual;
     if (current) {
       for (JavaMethod m : methods) {
         if (m.getName().equals(name))
@@ -232,6 +291,25 @@ public class JavaClass extends Visitor implements Scope, Translatable {
     return parent;
   }
   
+  /**
+   * Gets the class enclosing the scope, which is this class.
+   *
+   * @return The class.
+   */
+  public JavaClass getEnclosingClass() {
+    return this;
+  }
+
+  /**
+   * Gets the method enclosing the scope; there is none
+   * at the class level.
+   *
+   * @return <code>null</code>.
+   */
+  public JavaMethod getEnclosingMethod() {
+    return null;
+  }
+
   /**
    * Gets the parent scope; returns the superclass scope
    * if it exists; otherwise <code>null</code> because
@@ -248,32 +326,32 @@ public class JavaClass extends Visitor implements Scope, Translatable {
   /**
    * Gets the scope in which the specified variable is declared.
    *
-   * @param name The name of the variable.
+   * @param symbol The symbol of the variable.
    *
    * @return The scope of the variable if it exists;
    * <code>null</code> otherwise.
    */
-  public Scope getVariableScope(String name) {
-    if (variables.containsKey(name))
+  public Scope getVariableScope(int symbol) {
+    if (variables.contains(symbol))
       return this;
     if (null != parent)
-      return parent.getVariableScope(name);
+      return parent.getVariableScope(symbol);
     return null;
   }
 
   /**
    * Gets the type of the specified variable.
    *
-   * @param name The name of the variable.
+   * @param symbol The symbol of the variable.
    *
    * @return The type if the variable exists;
    * <code>null</code> otherwise.
    */
-  public JavaType getVariableType(String name) {
-    if (variables.containsKey(name))
-      return variables.get(name);
+  public JavaType getVariableType(int symbol) {
+    if (variables.contains(symbol))
+      return variables.get(symbol);
     if (null != parent)
-      return parent.getVariableType(name);
+      return parent.getVariableType(symbol);
     return null;
   }
 
@@ -291,7 +369,7 @@ public class JavaClass extends Visitor implements Scope, Translatable {
    *
    * @return The vtable.
    */
-  public LinkedHashMap<String, JavaMethod> getVTable() {
+  public VTable getVTable() {
     // Initialize the vtable if it hasn't been created yet
     if (null == vtable)
       initializeVTable();
@@ -310,6 +388,18 @@ public class JavaClass extends Visitor implements Scope, Translatable {
     return type.equals("JavaClass");
   }
   
+  /**
+   * Tests whether this is the public class of the main
+   * file and declares the main method.
+   *
+   * @return <code>True</code> if it is the main class;
+   * <code>false</code> otherwise.
+   */
+  public boolean isMainClass() {
+    return getFile().isMain() && visibility == JavaVisibility.PUBLIC &&
+      null != getMethod("main$array1_String", true);
+  }
+
   /**
    * Tests whether the class has a superclass.
    *
@@ -330,36 +420,51 @@ public class JavaClass extends Visitor implements Scope, Translatable {
     return isFinal;
   }
   
+  /**
+   * Returns <code>true</code> unless dead code elimination
+   * found the class unused by the code reachable from the
+   * main method.
+   *
+   * @return <code>True</code> if the class is reachable;
+   * <code>false</code> otherwise.
+   */
+  public boolean isReachable() {
+    return isReachable;
+  }
+
   /**
    * Checks if a variable is currently in scope.
    *
+   * @param symbol The symbol of the variable.
+   *
    * @return <code>True</code> if the variable is in scope;
    * <code>false</code> otherwise.
    */
-  public boolean isInScope(String name) {
-    if (variables.containsKey(name))
+  public boolean isInScope(int symbol) {
+    if (variables.contains(symbol))
       return true;
     if (null != parent)
-      return parent.isInScope(name);
+      return parent.isInScope(symbol);
     return false;
   }
 
   /**
    * Checks if the specified class variable is static.
    *
+   * @param symbol The symbol of the variable.
+   *
    * @return <code>True</code> if the variable is static;
    * <code>false</code> otherwise.
    */
-  public boolean isVariableStatic(String name) {
+  public boolean isVariableStatic(int symbol) {
     for (JavaField f : fields) {
-      List<String> names = f.getNames();
-      for (String fieldName : names) {
-        if (name.equals(fieldName))
+      for (int fieldSymbol : f.getSymbols()) {
+        if (symbol == fieldSymbol)
           return f.isStatic();
       }
     }
     if (null != parent)
-      return parent.isVariableStatic(name);
+      return parent.isVariableStatic(symbol);
     return false;
   }
 
@@ -369,11 +474,20 @@ public class JavaClass extends Visitor implements Scope, Translatable {
   /**
    * Adds a variable to the scope.
    *
-   * @param name The name of the variable.
+   * @param symbol The symbol of the variable.
    * @param type The type of the variable.
    */
-  public void addVariable(String name, JavaType type) {
-    variables.put(name, type);
+  public void addVariable(int symbol, JavaType type) {
+    variables.put(symbol, type);
+  }
+
+  /**
+   * Sets whether the class is reachable from the main method.
+   *
+   * @param reachable Whether the class is reachable.
+   */
+  public void setReachable(boolean reachable) {
+    isReachable = reachable;
   }
 
   /**
@@ -389,9 +503,8 @@ public class JavaClass extends Visitor implements Scope, Translatable {
       List<JavaField> fields = temp.getFields();
       for (JavaField f : fields) {
         if (!f.isStatic()) {
-          List<String> names = f.getNames();
-          for (String name : names) {
-            variables.put(name, f.getType());
+          for (int symbol : f.getSymbols()) {
+            variables.put(symbol, f.getType());
           }
         }
       }
@@ -476,6 +589,24 @@ public class JavaClass extends Visitor implements Scope, Translatable {
 
   // ======================== Translation Methods ===================
 
+  /**
+   * Attributes the field initializers and the bodies of
+   * the constructors and methods that are written.
+   */
+  public void attribute() {
+    for (JavaField f : fields) {
+      f.attribute();
+    }
+    for (JavaConstructor c : constructors) {
+      if (c.isReachable())
+        c.attribute();
+    }
+    for (JavaMethod m : methods) {
+      if (m.isReachable())
+        m.attribute();
+    }
+  }
+
   /**
    * Initializes the vtable for the class.
    */
@@ -484,21 +615,13 @@ public class JavaClass extends Visitor implements Scope, Translatable {
     if (null != vtable)
       return;
 
-    // Inherit methods from the parent
-    vtable = new LinkedHashMap<String, JavaMethod>();
-    if (null != parent) {
-      LinkedHashMap<String, JavaMethod> parentVTable = parent.getVTable();
-      Set<String> keys = parentVTable.keySet();
-      for (String key : keys) {
-        vtable.put(key, parentVTable.get(key));
-      }
-    }
-
-    // Add/override methods
+    // Add/override the virtual methods, sharing the parent's slots
+    List<JavaMethod> virtual = new ArrayList<JavaMethod>();
     for (JavaMethod m : methods) {
       if (m.isVirtual())
-        vtable.put(m.getName(), m);
+        virtual.add(m);
     }
+    vtable = new VTable(null == parent ? null : parent.getVTable(), virtual);
   }
 
   /**
@@ -556,6 +679,16 @@ public class JavaClass extends Visitor implements Scope, Translatable {
     // Destructor
     out.pln().indent().p("static void __delete(__").p(name).pln("*);");
 
+    // Pointer map
+    if (pointerMaps)
+      out.indent().p("static void __trace(__").p(name).pln("*, __rt::Visitor);");
+
+    // Static roots
+    if (rootSets) {
+      out.indent().pln("static void __traceStatics(__rt::Visitor);");
+      out.indent().pln("static __rt::RootSet __roots;");
+    }
+
     // Declare all methods
     if (methods.size() > 0)
       out.pln();
@@ -578,40 +711,36 @@ public class JavaClass extends Visitor implements Scope, Translatable {
     out.indent().p("bool (*equals$Object)(").p(name).pln(", Object);");
     out.indent().p("Class (*getClass$void)(").p(name).pln(");");
     out.indent().p("String (*toString$void)(").p(name).pln(");");
-    Set<String> keys = vtable.keySet();
-    for (String key : keys) {
-      if (key.equals("hashCode$void") || key.equals("equals$Object") || key.equals("toString$void"))
-        continue;
-      vtable.get(key).translateVTableDeclaration(out, this);
+    JavaMethod[] slots = vtable.getMethods();
+    for (int i = VTable.RESERVED; i < slots.length; i++) {
+      slots[i].translateVTableDeclaration(out, this);
     }
 
     // Construct the vtable with pointers to the methods
     out.pln().indent().p("__").p(name).pln("_VT()");
     out.indent().p(": __isa(__").p(name).pln("::__class()),");
-    out.indent().p("__delete((void(*)(__").p(name).pln("*))&__Object::__delete),");
-    if (vtable.containsKey("hashCode$void")) {
-      vtable.get("hashCode$void").translateVTableReference(out, this);
+    out.indent().p("__delete(&__").p(name).pln("::__delete),");
+    if (null != slots[VTable.HASH_CODE]) {
+      slots[VTable.HASH_CODE].translateVTableReference(out, this);
       out.pln(",");
     } else {
       out.indent().p("hashCode$void((int32_t(*)(").p(name).pln("))&__Object::hashCode$void),");
     }   
-    if (vtable.containsKey("equals$Object")) {
-      vtable.get("equals$Object").translateVTableReference(out, this);
+    if (null != slots[VTable.EQUALS]) {
+      slots[VTable.EQUALS].translateVTableReference(out, this);
       out.pln(",");
     } else {
       out.indent().p("equals$Object((bool(*)(").p(name).pln(",Object))&__Object::equals$Object),");
     }
     out.indent().p("getClass$void((Class(*)(").p(name).pln("))&__Object::getClass$void),");
-    if (vtable.containsKey("toString$void")) {
-      vtable.get("toString$void").translateVTableReference(out, this);
+    if (null != slots[VTable.TO_STRING]) {
+      slots[VTable.TO_STRING].translateVTableReference(out, this);
     } else {
       out.indent().p("toString$void((String(*)(").p(name).p("))&__Object::toString$void)");
     }
-    for (String key : keys) {
-      if (key.equals("hashCode$void") || key.equals("equals$Object") || key.equals("toString$void"))
-        continue;
+    for (int i = VTable.RESERVED; i < slots.length; i++) {
       out.pln(",");
-      vtable.get(key).translateVTableReference(out, this);
+      slots[i].translateVTableReference(out, this);
     }
     out.pln(" {}");
     out.decr().indent().pln("};");
@@ -644,7 +773,7 @@ public class JavaClass extends Visitor implements Scope, Translatable {
     
     // If this is the main public class, also add the template specializations
     // for java.lang classes and primitive types
-    if (getFile().isMain() && visibility == JavaVisibility.PUBLIC) {
+    if (isMainClass()) {
       Set<String> keys = arrays.keySet();
       for (String key : keys) {
         if (key.equals("Object") || key.equals("Class") ||
@@ -670,6 +799,12 @@ public class JavaClass extends Visitor implements Scope, Translatable {
    * @return The output stream.
    */
   public Printer translate(Printer out) {
+    // Register the static roots before any static field is initialized
+    if (rootSets) {
+      out.indent().p("__rt::RootSet __").p(name).p("::__roots(&__").p(name)
+        .pln("::__traceStatics);").pln();
+    }
+
     // Initialize the static reference to super
     out.indent().p("const ");
     if (null == parent) {
@@ -703,6 +838,8 @@ public class JavaClass extends Visitor implements Scope, Translatable {
     // Use the custom constructors if written
     if (0 != constructors.size()) {
       for (JavaConstructor c : constructors) {
+        if (!c.isReachable())
+          continue;
         c.translate(out);
         out.pln();
       }
@@ -740,8 +877,38 @@ public class JavaClass extends Visitor implements Scope, Translatable {
     out.indent().pln("delete __this;");
     out.decr().indent().pln("}").pln();
 
-    // Translate all the methods
+    // Add the pointer map, listing inherited fields as they are
+    // copied into the struct
+    if (pointerMaps) {
+      out.indent().p("void __").p(name).p("::__trace(__").p(name)
+        .pln("* __this, __rt::Visitor __visit) {").incr();
+      JavaClass temp = parent;
+      while (null != temp) {
+        for (JavaField f : temp.getFields()) {
+          f.translateTrace(out);
+        }
+        temp = temp.getParent();
+      }
+      for (JavaField f : fields) {
+        f.translateTrace(out);
+      }
+      out.decr().indent().pln("}").pln();
+    }
+
+    // Add the static roots
+    if (rootSets) {
+      out.indent().p("void __").p(name).pln("::__traceStatics(__rt::Visitor __visit) {").incr();
+      out.indent().p("__rt::trace(__").p(name).pln("::__super, __visit);");
+      for (JavaField f : fields) {
+        f.translateStaticTrace(out);
+      }
+      out.decr().indent().pln("}").pln();
+    }
+
+    // Translate all the reachable methods
     for (JavaMethod m : methods) {
+      if (!m.isReachable())
+        continue;
       m.translate(out);
       out.pln();
     }
@@ -769,6 +936,42 @@ public class JavaClass extends Visitor implements Scope, Translatable {
     return out;
   }
 
+  /**
+   * Creates the bodies of the methods and constructors again
+   * from the class declaration after they have been released.
+   *
+   * @param n The class declaration node.
+   */
+  public void load(GNode n) {
+    int c = 0, m = 0;
+    for (Object o : n) {
+      if (!(o instanceof Node) || !((Node)o).hasName("ClassBody"))
+        continue;
+      for (Object d : (Node)o) {
+        if (!(d instanceof Node))
+          continue;
+        if (((Node)d).hasName("ConstructorDeclaration"))
+          constructors.get(c++).load((GNode)d);
+        else if (((Node)d).hasName("MethodDeclaration"))
+          methods.get(m++).load((GNode)d);
+      }
+    }
+  }
+
+  /**
+   * Drops the bodies of the methods and constructors once the
+   * class has been translated.  The signatures and fields stay,
+   * since subclasses and callers in other classes still need them.
+   */
+  public void release() {
+    for (JavaConstructor c : constructors) {
+      c.release();
+    }
+    for (JavaMethod m : methods) {
+      m.release();
+    }
+  }
+
 
   // ========================== Static Methods ======================
 
@@ -794,12 +997,59 @@ public class JavaClass extends Visitor implements Scope, Translatable {
   }
 
   /**
-   * Gets the list of Java classes.
+   * Sets whether to emit the pointer maps used by the
+   * collectors.
+   *
+   * @param enabled Whether to emit pointer maps.
+   */
+  public static void setPointerMaps(boolean enabled) {
+    pointerMaps = enabled;
+  }
+
+  /**
+   * Sets whether to emit the static root sets used by the
+   * mark-sweep collector.
    *
-   * @return The list of Java classes.
+   * @param enabled Whether to emit root sets.
    */
-  public static Set<String> getJavaClassList() {
-    return classes.keySet();
+  public static void setRootSets(boolean enabled) {
+    rootSets = enabled;
+  }
+
+  /**
+   * Gets the macro the runtime must be compiled with to
+   * use the pointer maps and root sets emitted.  Mark-sweep
+   * takes precedence, since its output is a superset.
+   *
+   * @return The name of the macro or <code>null</code> if
+   * no collector is used.
+   */
+  public static String getCollectorDefine() {
+    if (rootSets)
+      return "PCP_MARK_SWEEP";
+    else if (pointerMaps)
+      return "PCP_CYCLE_COLLECTOR";
+    return null;
+  }
+
+  /**
+   * Writes a check that the C++ code is compiled with the
+   * macro of the collector the pointer maps were emitted for.
+   * Defining the macro in the header instead would not reach
+   * the runtime sources, which are compiled on their own.
+   *
+   * @param out The output stream.
+   *
+   * @return The output stream.
+   */
+  public static Printer translateCollectorCheck(Printer out) {
+    String define = getCollectorDefine();
+    if (null != define) {
+      out.p("#ifndef ").pln(define);
+      out.p("#error \"translated for a collector; compile with -D").p(define).pln("\"");
+      out.pln("#endif").pln();
+    }
+    return out;
   }
 
 }
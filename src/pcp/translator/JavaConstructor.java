@@ -50,6 +50,9 @@ public class JavaConstructor extends JavaMethod implements Translatable {
   // The mangled name of the constructor
   private String name;
 
+  // The line of the declaration in the Java source
+  private int line;
+
   // The parameters for the constructor
   private LinkedHashMap<String, JavaType> parameters;
 
@@ -71,6 +74,9 @@ public class JavaConstructor extends JavaMethod implements Translatable {
     // Set the class
     this.cls = cls;
 
+    // Remember where it is declared for #line directives
+    line = null == n.getLocation() ? 0 : n.getLocation().line;
+
     // Initialize the maps
     parameters = new LinkedHashMap<String, JavaType>();
     
@@ -88,15 +94,7 @@ public class JavaConstructor extends JavaMethod implements Translatable {
     }
 
     // Create the body of the constructor
-    body = new JavaBlock(n.getGeneric(5), cls, this);
-
-    // Check if the first line of the constructor is a this() or super() call
-    if (0 < n.getNode(5).size() && n.getNode(5).getNode(0).hasName("ExpressionStatement") &&
-        n.getNode(5).getNode(0).getNode(0).hasName("CallExpression"))
-      if (n.getNode(5).getNode(0).getNode(0).getString(2).equals("this"))
-        thisCall = new JavaStatement(n.getNode(5).getGeneric(0), body);
-      else if (n.getNode(5).getNode(0).getNode(0).getString(2).equals("super"))
-        superCall = new JavaStatement(n.getNode(5).getGeneric(0), body);
+    load(n);
   }
 
 
@@ -160,11 +158,13 @@ public class JavaConstructor extends JavaMethod implements Translatable {
   /**
    * Checks if the specified variable is static.
    *
+   * @param symbol The symbol of the variable.
+   *
    * @return <code>True</code> if the variable is static;
    * <code>false</code> otherwise.
    */
-  public boolean isVariableStatic(String name) {
-    return cls.isVariableStatic(name);
+  public boolean isVariableStatic(int symbol) {
+    return cls.isVariableStatic(symbol);
   }
 
 
@@ -270,6 +270,19 @@ public class JavaConstructor extends JavaMethod implements Translatable {
     return out.p(name).pln(" __this = __rt::null());");
   }
 
+  /**
+   * Attributes the expressions of the body, including
+   * any this() or super() call.
+   */
+  public void attribute() {
+    if (null != body)
+      body.attribute();
+    if (null != thisCall)
+      thisCall.attribute();
+    if (null != superCall)
+      superCall.attribute();
+  }
+
   /**
    * Translates the constructor into C++ and writes
    * it to the output stream.
@@ -281,6 +294,7 @@ public class JavaConstructor extends JavaMethod implements Translatable {
   public Printer translate(Printer out) {
     // Create the mangled name based on the parameters
     Set<String> params = parameters.keySet();
+    JavaStatement.translateLine(out, cls, line);
     out.indent().p(name).p(" __").p(name).p("::").p(name);
     for (String param : params) {
       out.p("$").p(parameters.get(param).getMangledType());
@@ -348,7 +362,35 @@ public class JavaConstructor extends JavaMethod implements Translatable {
 
     // Return the created instance
     out.indent().pln("return __this;");
-    return out.decr().indent().pln("}");
+    out.decr().indent().pln("}");
+    return JavaStatement.translateOutputLine(out);
+  }
+
+  /**
+   * Creates the body of the constructor from its declaration.
+   *
+   * @param n The constructor declaration node.
+   */
+  public void load(GNode n) {
+    body = new JavaBlock(n.getGeneric(5), cls, this);
+
+    // Check if the first line of the constructor is a this() or super() call
+    if (0 < n.getNode(5).size() && n.getNode(5).getNode(0).hasName("ExpressionStatement") &&
+        n.getNode(5).getNode(0).getNode(0).hasName("CallExpression"))
+      if (n.getNode(5).getNode(0).getNode(0).getString(2).equals("this"))
+        thisCall = new JavaStatement(n.getNode(5).getGeneric(0), body);
+      else if (n.getNode(5).getNode(0).getNode(0).getString(2).equals("super"))
+        superCall = new JavaStatement(n.getNode(5).getGeneric(0), body);
+  }
+
+  /**
+   * Drops the body of the constructor once it has been
+   * translated.
+   */
+  public void release() {
+    body = null;
+    superCall = null;
+    thisCall = null;
   }
 
 }
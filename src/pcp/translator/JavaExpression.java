@@ -23,6 +23,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import xtc.tree.GNode;
 import xtc.tree.Node;
@@ -48,12 +49,47 @@ public class JavaExpression extends Visitor implements Translatable {
   // The statement in which this expression appears
   private JavaStatement s;
 
+  // The class and method/constructor enclosing the expression
+  private JavaClass enclosingClass;
+  private JavaMethod enclosingMethod;
+
   // The resulting type of this expression
   private JavaType type;
   
   // The AST node 
   private GNode node;
 
+  // Whether the expression has been attributed
+  private boolean attributed;
+
+  // The number of expressions created, attributed, and translated,
+  // counted atomically as packages may be written in parallel
+  private static final AtomicInteger expressions = new AtomicInteger();
+  private static final AtomicInteger attributions = new AtomicInteger();
+  private static final AtomicInteger translations = new AtomicInteger();
+
+  // Whether the attribution pass is done, after which only the
+  // bodies reparsed by streaming may be attributed
+  private static volatile boolean frozen;
+
+  // Whether to allocate rectangular arrays of primitives in one block
+  private static boolean flattenArrays;
+
+  // Whether to tag allocations with their site for the profiler
+  private static boolean profileAllocations;
+
+  // The static library methods implemented by functions in the
+  // runtime, by name and number of arguments: the C++ function and
+  // the return type of each
+  private static final Map<String, String[]> library = new HashMap<String, String[]>();
+  static {
+    library.put("Integer.parseInt/1", new String[] { "__rt::parseInt", "int" });
+    library.put("Math.sqrt/1", new String[] { "__rt::sqrt", "double" });
+    library.put("System.arraycopy/5", new String[] { "__rt::arraycopy", "void" });
+    library.put("Arrays.fill/2", new String[] { "__rt::fill", "void" });
+    library.put("Arrays.fill/4", new String[] { "__rt::fill", "void" });
+  }
+
 
   // =========================== Constructors =======================
 
@@ -70,6 +106,9 @@ public class JavaExpression extends Visitor implements Translatable {
   public JavaExpression(GNode n, JavaStatement s) {
     this.s = s;
     this.node = n;
+    enclosingClass = s.getEnclosingClass();
+    enclosingMethod = s.getEnclosingMethod();
+    expressions.incrementAndGet();
     dispatch(n);
   }
   
@@ -86,13 +125,33 @@ public class JavaExpression extends Visitor implements Translatable {
   }
 
   /**
-   * Gets the resulting type of the expression.
+   * Gets the class enclosing the expression.
+   *
+   * @return The class.
+   */
+  public JavaClass getEnclosingClass() {
+    return enclosingClass;
+  }
+
+  /**
+   * Gets the method or constructor enclosing the expression.
+   *
+   * @return The method if the expression is within one;
+   * <code>null</code> otherwise.
+   */
+  public JavaMethod getEnclosingMethod() {
+    return enclosingMethod;
+  }
+
+  /**
+   * Gets the resulting type of the expression, attributing
+   * it first if needed.
    *
    * @return The type.
    */
   public JavaType getType() {
     if (null == type)
-      e.determineType();
+      attribute();
     return type;
   }
 
@@ -121,11 +180,69 @@ public class JavaExpression extends Visitor implements Translatable {
 
   // ============================ Set Methods =======================
 
+  /**
+   * Attributes the expression: first its subexpressions, then its
+   * own type, along with the method or constructor it calls.  The
+   * results are kept in the nodes, so the expression is attributed
+   * once however many times it is translated.
+   */
+  public void attribute() {
+    if (attributed)
+      return;
+    attributed = true;
+    if (null != e) {
+      if (frozen && !JavaFile.isStreaming())
+        throw new IllegalStateException("Expression attributed after the attribution pass");
+      attributions.incrementAndGet();
+      e.attributeSubexpressions();
+      e.determineType();
+      if (null != s)
+        s.addReference(e.getReferencedClass());
+      Reachability.Uses uses = Reachability.getUses(enclosingMethod, enclosingClass);
+      if (null != uses) {
+        uses.addClass(e.getReferencedClass());
+        uses.addClass(enclosingClass.getFile(), type);
+        e.addUses(uses);
+      }
+    }
+  }
+
+  /**
+   * Attributes the subexpressions of the expression.
+   */
+  protected void attributeSubexpressions() {
+    // Nothing to do here, overridden in the various nested classes
+  }
+
+  /**
+   * Gets the class whose static state the expression uses
+   * once attributed, that is, the class it instantiates or
+   * whose static method or variable it refers to.
+   *
+   * @return The class or <code>null</code> if there is none.
+   */
+  protected JavaClass getReferencedClass() {
+    // Nothing to do here, overridden in the various nested classes
+    return null;
+  }
+
+  /**
+   * Records the methods the expression calls and the classes it
+   * instantiates or names once attributed, beyond its own type
+   * and referenced class.
+   *
+   * @param uses The uses of the enclosing code.
+   */
+  protected void addUses(Reachability.Uses uses) {
+    // Nothing to do here, overridden in the various nested classes
+  }
+
   /**
    * Adds the variables referenced in the expression to a list of 
    * variables to check for null.
    */
   public void checkNotNull() {
+    attribute();
     if (null != e)
       e.checkNotNull();
   }
@@ -513,6 +630,14 @@ public class JavaExpression extends Visitor implements Translatable {
         right.checkNotNull();
     }
 
+    /**
+     * Attributes the subexpressions of the expression.
+     */
+    protected void attributeSubexpressions() {
+      left.attribute();
+      right.attribute();
+    }
+
     /**
      * Determines the resulting type of the expression.
      */
@@ -542,7 +667,6 @@ public class JavaExpression extends Visitor implements Translatable {
      * @return The output stream.
      */
     public Printer translate(Printer out) {
-      determineType();
       // If the resulting type is not a string, simply perform the arithmetic
       if (!isString) {
         left.translate(out);
@@ -569,7 +693,7 @@ public class JavaExpression extends Visitor implements Translatable {
             out.indent().pln("else");
             out.indentMore().p("sout << ");
             x.translate(out).pln(";");
-            out.indent().pln("String s = new __String(sout.str());");
+            out.indent().pln("String s = __rt::string(sout.str());");
             out.indent().pln("s;");
             out.decr().indent().p("})");
           } else if (x.getType().getType().equals("bool")) {
@@ -606,7 +730,7 @@ public class JavaExpression extends Visitor implements Translatable {
           }
         }
         out.pln(";");
-        out.indent().pln("String s = new __String(sout.str());");
+        out.indent().pln("String s = __rt::string(sout.str());");
         out.indent().pln("s;");
         out.decr().indent().p("})");
         return out;
@@ -648,6 +772,14 @@ public class JavaExpression extends Visitor implements Translatable {
       }
     }
 
+    /**
+     * Attributes the subexpressions of the expression.
+     */
+    protected void attributeSubexpressions() {
+      for (JavaExpression e : variables)
+        e.attribute();
+    }
+
     /**
      * Determines the resulting type of the expression.
      */
@@ -668,7 +800,6 @@ public class JavaExpression extends Visitor implements Translatable {
      * @return The output stream.
      */
     public Printer translate(Printer out) {
-      determineType();
       out.pln("({").incr();
       out.indent().p("__rt::Ptr<");
       parent.getType().translate(out).p(" > a = new ");
@@ -716,6 +847,13 @@ public class JavaExpression extends Visitor implements Translatable {
         e.checkNotNull();
     }
 
+    /**
+     * Attributes the subexpressions of the expression.
+     */
+    protected void attributeSubexpressions() {
+      e.attribute();
+    }
+
     /**
      * Determines the resulting type of the expression.
      */
@@ -734,7 +872,6 @@ public class JavaExpression extends Visitor implements Translatable {
      * @return The output stream.
      */
     public Printer translate(Printer out) {
-      determineType();
       if (castType.isPrimitive()) {
         out.p("(");
         castType.translate(out).p(")(");
@@ -759,6 +896,9 @@ public class JavaExpression extends Visitor implements Translatable {
     private String name;
     private JavaExpression caller, parent;
     private JavaMethod method;
+    private JavaClass target;
+    private String[] function;
+    private GNode receiver;
 
     /**
      * Creates a new call expression.
@@ -771,7 +911,7 @@ public class JavaExpression extends Visitor implements Translatable {
       this.parent = parent;
       
       // Check if this expression is in the constructor
-      if (parent.getStatement().getScope().hasName("JavaClass"))
+      if (parent.getStatement().getScope() instanceof JavaClass)
         isConstructor = true;
       else
         isConstructor = parent.getStatement().getScope().hasName("JavaConstructor");
@@ -784,7 +924,13 @@ public class JavaExpression extends Visitor implements Translatable {
             n.getNode(0).getString(1).equals("out") &&
             (n.getString(2).equals("println") || n.getString(2).equals("print")))
           isPrint = true;
-        else if (n.getNode(0).hasName("SuperExpression"))
+        else if (n.getNode(0).hasName("PrimaryIdentifier") &&
+            library.containsKey(n.getNode(0).getString(0) + "." + n.getString(2) + "/" +
+                                n.getNode(3).size())) {
+          function = library.get(n.getNode(0).getString(0) + "." + n.getString(2) + "/" +
+                                 n.getNode(3).size());
+          receiver = n.getGeneric(0);
+        } else if (n.getNode(0).hasName("SuperExpression"))
           isSuperCall = true;
         else if (n.getNode(0).hasName("ThisExpression"))
           isThisCall = true;
@@ -810,7 +956,6 @@ public class JavaExpression extends Visitor implements Translatable {
      * Makes sure to call checkNotNull on this variable.
      */
     public void checkNotNull() {
-      determineType();
       if (null != caller && (null == method ||
           (null != method && !method.isStatic())) && !isSuperCall)
         caller.checkNotNull();
@@ -821,11 +966,64 @@ public class JavaExpression extends Visitor implements Translatable {
       }
     }
 
+    /**
+     * Attributes the subexpressions of the expression.  A call
+     * that looks like a library method is an ordinary call if
+     * the name of its class is a variable in scope or a
+     * translated class.
+     */
+    protected void attributeSubexpressions() {
+      if (null != function) {
+        String name = receiver.getString(0);
+        if (null != parent.getStatement().getScope().getVariableScope(Symbol.variable(name)) ||
+            null != parent.getEnclosingClass().getFile().getJavaClass(name)) {
+          function = null;
+          caller = new JavaExpression(receiver, parent.getStatement());
+        }
+      }
+      if (null != caller)
+        caller.attribute();
+      for (JavaExpression e : args)
+        e.attribute();
+    }
+
+    /**
+     * Gets the class of the static method called.
+     *
+     * @return The class or <code>null</code> if there is none.
+     */
+    protected JavaClass getReferencedClass() {
+      if (null != method && method.isStatic())
+        return method.getClassFrom();
+      return null;
+    }
+
+    /**
+     * Records the method or constructor called.  Virtual methods
+     * are dispatched, except for calls through super, which
+     * always reach the method of the superclass.
+     *
+     * @param uses The uses of the enclosing code.
+     */
+    protected void addUses(Reachability.Uses uses) {
+      if (isThis || isSuper) {
+        if (null != target) {
+          uses.addClass(target);
+          uses.addCall(target.getConstructor(name, true));
+        }
+      } else if (null != method) {
+        if (method.isVirtual() && !isSuperCall)
+          uses.addDispatch(method);
+        else
+          uses.addCall(method);
+      }
+    }
+
     /**
      * Determines the closest matching overloaded method.
      */
     public void determineMethod() {
-      if (isPrint)
+      if (isPrint || null != function)
         return;
 
       // First, locate the class that the method is being called on
@@ -833,10 +1031,7 @@ public class JavaExpression extends Visitor implements Translatable {
 
       // If there is no caller, then we're using the current class
       if (null == caller && !isPrint) {
-        Scope temp = parent.getStatement().getScope();
-        while (!temp.hasName("JavaClass"))
-          temp = temp.getParentScope();
-        cls = (JavaClass)temp;
+        cls = parent.getEnclosingClass();
         if (isThis) {
           name = cls.getName();
         } else if (isSuper) {
@@ -845,16 +1040,11 @@ public class JavaExpression extends Visitor implements Translatable {
         } else if (isSuperCall) {
           cls = cls.getParent();
         }
+        // Keep the class whose constructor this() or super() calls
+        target = cls;
       // Otherwise locate the class
       } else if (null != caller && !isThis && !isSuper) {
-        String callerClass = caller.getType().getType();
-        Set<String> classes = JavaClass.getJavaClassList();
-        for (String className : classes) {
-          if (className.endsWith(callerClass)) {
-            cls = JavaClass.getJavaClass(className);
-            break;
-          }
-        }
+        cls = parent.getEnclosingClass().getFile().getJavaClass(caller.getType());
       }
 
       // Used for performing a breadth-first search
@@ -972,17 +1162,8 @@ public class JavaExpression extends Visitor implements Translatable {
       if (null == caller) {
         if (!isSuper)
           current = true;
-      } else {
-        Scope temp = caller.getStatement().getScope();
-        while (!temp.hasName("JavaClass"))
-          temp = temp.getParentScope();
-        JavaClass callCls = (JavaClass)temp;
-        temp = parent.getStatement().getScope();
-        while (!temp.hasName("JavaClass"))
-          temp = temp.getParentScope();
-        JavaClass thisCls = (JavaClass)temp;
-        if (thisCls == callCls)
-          current = true;
+      } else if (parent.getEnclosingClass() == caller.getEnclosingClass()) {
+        current = true;
       }
       while (methods.containsKey(distance)) {
         List<String> names = methods.get(distance);
@@ -1025,6 +1206,12 @@ public class JavaExpression extends Visitor implements Translatable {
         return;
       determineMethod();
 
+      // Library methods implemented by the runtime
+      if (null != function) {
+        parent.setType(new JavaType(function[1]));
+        return;
+      }
+
       // Special cases for methods defined in java_lang
       if (null == method) {
         if (name.equals("hashCode$void") || name.equals("length$void")) {
@@ -1066,7 +1253,6 @@ public class JavaExpression extends Visitor implements Translatable {
      * @return The output stream.
      */
     public Printer translate(Printer out) {
-      determineType();
 
       // Special case for print statements
       if (isPrint) {
@@ -1086,7 +1272,7 @@ public class JavaExpression extends Visitor implements Translatable {
             out.indent().pln("else");
             out.indentMore().p("sout << (");
             args.get(i).translate(out).pln(");");
-            out.indent().pln("String s = new __String(sout.str());");
+            out.indent().pln("String s = __rt::string(sout.str());");
             out.indent().pln("s;");
             out.decr().indent().p("})");
           } else if (args.get(i).getType().getType().equals("bool")) {
@@ -1127,14 +1313,20 @@ public class JavaExpression extends Visitor implements Translatable {
           out.p(" << std::endl");
         return out;
 
+      // Special case for library methods implemented by the runtime
+      } else if (null != function) {
+        out.p(function[0]).p("(");
+        int size = args.size();
+        for (int i = 0; i < size; i++) {
+          args.get(i).translate(out);
+          if (i < size - 1)
+            out.p(", ");
+        }
+        return out.p(")");
+
       // Special case for this() or super() calls
       } else if (isThis || isSuper) {
-        Scope temp = parent.getStatement().getScope();
-        while (!temp.hasName("JavaClass"))
-          temp = temp.getParentScope();
-        JavaClass cls = (JavaClass)temp;
-        if (isSuper)
-          cls = cls.getParent();
+        JavaClass cls = target;
         if (null == cls)
           return out.p("java::lang::Object::Object$void(__this)");
         if (!cls.getFile().getPackage().getNamespace().equals(""))
@@ -1249,6 +1441,22 @@ public class JavaExpression extends Visitor implements Translatable {
         e.checkNotNull();
     }
 
+    /**
+     * Attributes the subexpressions of the expression.
+     */
+    protected void attributeSubexpressions() {
+      e.attribute();
+    }
+
+    /**
+     * Records the class named.
+     *
+     * @param uses The uses of the enclosing code.
+     */
+    protected void addUses(Reachability.Uses uses) {
+      uses.addClass(parent.getEnclosingClass().getFile(), castType);
+    }
+
     /**
      * Determines the resulting type of the expression.
      */
@@ -1267,7 +1475,6 @@ public class JavaExpression extends Visitor implements Translatable {
      * @return The output stream.
      */
     public Printer translate(Printer out) {
-      determineType();
       if (castType.isPrimitive()) {
         out.p("(");
         castType.translate(out).p(")(");
@@ -1301,6 +1508,15 @@ public class JavaExpression extends Visitor implements Translatable {
       type = new JavaType(n.getGeneric(0));
     }
 
+    /**
+     * Records the class named.
+     *
+     * @param uses The uses of the enclosing code.
+     */
+    protected void addUses(Reachability.Uses uses) {
+      uses.addClass(parent.getEnclosingClass().getFile(), type);
+    }
+
     /**
      * Determines the resulting type of the expression.
      */
@@ -1319,7 +1535,6 @@ public class JavaExpression extends Visitor implements Translatable {
      * @return The output stream.
      */
     public Printer translate(Printer out) {
-      determineType();
       // What is a class literal expression?
       return out;
     }
@@ -1359,6 +1574,15 @@ public class JavaExpression extends Visitor implements Translatable {
         ifFalse.checkNotNull();
     }
 
+    /**
+     * Attributes the subexpressions of the expression.
+     */
+    protected void attributeSubexpressions() {
+      test.attribute();
+      ifTrue.attribute();
+      ifFalse.attribute();
+    }
+
     /**
      * Determines the resulting type of the expression.
      */
@@ -1377,7 +1601,6 @@ public class JavaExpression extends Visitor implements Translatable {
      * @return The output stream.
      */
     public Printer translate(Printer out) {
-      determineType();
       test.translate(out).p(" ? ");
       ifTrue.translate(out).p(" : ");
       return ifFalse.translate(out);
@@ -1449,6 +1672,17 @@ public class JavaExpression extends Visitor implements Translatable {
         right.checkNotNull();
     }
 
+    /**
+     * Attributes the subexpressions of the expression.
+     */
+    protected void attributeSubexpressions() {
+      left.attribute();
+      if (null != check)
+        check.attribute();
+      if (null != right)
+        right.attribute();
+    }
+
     /**
      * Determines the resulting type of the expression.
      */
@@ -1479,12 +1713,16 @@ public class JavaExpression extends Visitor implements Translatable {
      * @return The output stream.
      */
     public Printer translate(Printer out) {
-      determineType();
       if (left.hasName("SubscriptExpression") && null != right &&
           !right.getType().isPrimitive()) {
         left.translate(out).pln(" = ({").incr();
         out.indent();
-        right.getType().translate(out).p(" a = ");
+        if (right.getType().isArray())
+          out.p("__rt::Ptr<");
+        right.getType().translate(out);
+        if (right.getType().isArray())
+          out.p(" >");
+        out.p(" a = ");
         right.translate(out).pln(";");
         out.indent().p("__rt::checkStore(");
         check.translate(out).pln(", a);");
@@ -1543,6 +1781,22 @@ public class JavaExpression extends Visitor implements Translatable {
         object.checkNotNull();
     }
 
+    /**
+     * Attributes the subexpressions of the expression.
+     */
+    protected void attributeSubexpressions() {
+      object.attribute();
+    }
+
+    /**
+     * Records the class named.
+     *
+     * @param uses The uses of the enclosing code.
+     */
+    protected void addUses(Reachability.Uses uses) {
+      uses.addClass(parent.getEnclosingClass().getFile(), type);
+    }
+
     /**
      * Determines the resulting type of the expression.
      */
@@ -1561,7 +1815,6 @@ public class JavaExpression extends Visitor implements Translatable {
      * @return The output stream.
      */
     public Printer translate(Printer out) {
-      determineType();
       out.pln("({");
       out.incr().indent().p("Class k = __").p(type.getType()).pln("::__class();");
       out.indent().p("k->__vptr->isInstance$Object(k, ");
@@ -1638,7 +1891,6 @@ public class JavaExpression extends Visitor implements Translatable {
      * @return The output stream.
      */
     public Printer translate(Printer out) {
-      determineType();
       if (isNull)
         return out.p("__rt::null()");
       else if (isString)
@@ -1681,6 +1933,14 @@ public class JavaExpression extends Visitor implements Translatable {
         right.checkNotNull();
     }
 
+    /**
+     * Attributes the subexpressions of the expression.
+     */
+    protected void attributeSubexpressions() {
+      left.attribute();
+      right.attribute();
+    }
+
     /**
      * Determines the resulting type of the expression.
      */
@@ -1706,7 +1966,6 @@ public class JavaExpression extends Visitor implements Translatable {
      * @return The output stream.
      */
     public Printer translate(Printer out) {
-      determineType();
       out.p("(");
       left.translate(out).p(") ").p(operator).p(" (");
       return right.translate(out).p(")");
@@ -1754,6 +2013,14 @@ public class JavaExpression extends Visitor implements Translatable {
       }
     }
 
+    /**
+     * Attributes the subexpressions of the expression.
+     */
+    protected void attributeSubexpressions() {
+      for (JavaExpression e : dimensions)
+        e.attribute();
+    }
+
     /**
      * Determines the resulting type of the expression.
      */
@@ -1772,15 +2039,32 @@ public class JavaExpression extends Visitor implements Translatable {
      * @return The output stream.
      */
     public Printer translate(Printer out) {
-      determineType();
-      if (1 < dimensions.size()) {
+      JavaType component = type.getArrayType();
+      if (flattenArrays && 2 == dimensions.size() &&
+          component.getArrayType().isPrimitive()) {
+        // Allocate the rows and their elements in one block
+        if (profileAllocations)
+          parent.translateSite(out, type);
+        out.p("__rt::newFlatArray<");
+        component.getArrayType().translate(out).p(">(");
+        dimensions.get(0).translate(out).p(", ");
+        dimensions.get(1).translate(out).p(")");
+        if (profileAllocations)
+          out.p(")");
+      } else if (1 < dimensions.size()) {
         out.pln("({").incr();
         for (int i = 0; i < dimensions.size(); i++) {
           out.indent().p("__rt::Ptr<");
           type.setDimensions(dimensions.size() - i);
-          type.translate(out).p(" > a").p(i).p(" = new ");
+          type.translate(out).p(" > a").p(i).p(" = ");
+          if (profileAllocations)
+            parent.translateSite(out, type);
+          out.p("new ");
           type.translate(out).p("(");
-          dimensions.get(i).translate(out).pln(");");
+          dimensions.get(i).translate(out).p(")");
+          if (profileAllocations)
+            out.p(")");
+          out.pln(";");
           if (i < dimensions.size() - 1) {
             out.indent().p("for (int32_t i").p(i).p(" = 0; i").p(i).p(" < ");
             dimensions.get(i).translate(out).p("; i").p(i).pln("++) {").incr();
@@ -1792,10 +2076,15 @@ public class JavaExpression extends Visitor implements Translatable {
         }
         out.indent().pln("a0;");
         out.decr().indent().p("})");
+        type.setDimensions(dimensions.size());
       } else {
+        if (profileAllocations)
+          parent.translateSite(out, type);
         out.p("new ");
         type.translate(out).p("(");
         dimensions.get(0).translate(out).p(")");
+        if (profileAllocations)
+          out.p(")");
       }
       return out;
     }
@@ -1841,6 +2130,35 @@ public class JavaExpression extends Visitor implements Translatable {
       }
     }
 
+    /**
+     * Attributes the subexpressions of the expression.
+     */
+    protected void attributeSubexpressions() {
+      for (JavaExpression e : args)
+        e.attribute();
+    }
+
+    /**
+     * Gets the class instantiated.
+     *
+     * @return The class or <code>null</code> if it is not translated.
+     */
+    protected JavaClass getReferencedClass() {
+      return cls;
+    }
+
+    /**
+     * Records the class instantiated and its constructor.
+     *
+     * @param uses The uses of the enclosing code.
+     */
+    protected void addUses(Reachability.Uses uses) {
+      if (null == cls)
+        return;
+      uses.addInstance(cls);
+      uses.addCall(cls.getConstructor(name, true));
+    }
+
     /**
      * Determines the correct overloaded constructor.
      */
@@ -1850,13 +2168,7 @@ public class JavaExpression extends Visitor implements Translatable {
         return;
 
       // First, locate the class that we're constructing
-      Set<String> classes = JavaClass.getJavaClassList();
-      for (String className : classes) {
-        if (className.endsWith(type.getClassType())) {
-          cls = JavaClass.getJavaClass(className);
-          break;
-        }
-      }
+      cls = parent.getEnclosingClass().getFile().getJavaClass(type);
       name = type.getClassType();
 
       // Used for performing a breadth-first search
@@ -1971,11 +2283,7 @@ public class JavaExpression extends Visitor implements Translatable {
       // Iterate over the mangled constructor names in order until a match is found
       int distance = 0;
       boolean current = false;
-      Scope temp = parent.getStatement().getScope();
-      while (!temp.hasName("JavaClass"))
-        temp = temp.getParentScope();
-      JavaClass thisCls = (JavaClass)temp;
-      if (thisCls == cls)
+      if (parent.getEnclosingClass() == cls)
         current = true;
       while (methods.containsKey(distance)) {
         List<String> names = methods.get(distance);
@@ -2011,13 +2319,14 @@ public class JavaExpression extends Visitor implements Translatable {
      * @return The output stream.
      */
     public Printer translate(Printer out) {
-      determineType();
       if (type.getType().equals("String")) {
         if (0 == args.size())
           return out.p("__rt::literal(\"\")");
         else
           return args.get(0).translate(out);
       }
+      if (profileAllocations)
+        parent.translateSite(out, type);
       if (null != cls && !cls.getFile().getPackage().getNamespace().equals(""))
         out.p(cls.getFile().getPackage().getNamespace()).p("::");
       out.p("__").p(type.getClassType()).p("::").p(name).p("(");
@@ -2027,6 +2336,8 @@ public class JavaExpression extends Visitor implements Translatable {
         if (i < argsize - 1)
           out.p(", ");
       }
+      if (profileAllocations)
+        out.p(")");
       return out.p(")");
     }
 
@@ -2040,9 +2351,11 @@ public class JavaExpression extends Visitor implements Translatable {
 
     private boolean isClass, isClassVar;
     private String name;
+    private int symbol;
     private JavaExpression parent;
     private JavaPackage pkg;
     private JavaClass scope;
+    private Scope declared;
 
     /**
      * Creates a new primary identifier.
@@ -2055,23 +2368,23 @@ public class JavaExpression extends Visitor implements Translatable {
       this.parent = parent;
       // The name of the identifier
       name = n.getString(0);
+      symbol = Symbol.variable(name);
     }
 
     /**
      * Makes sure to call checkNotNull on this variable.
      */
     public void checkNotNull() {
-      determineType();
       if (parent.getType().isPrimitive())
         return;
       StringBuilder check = new StringBuilder();
-      if (parent.getStatement().getScope().isInScope("$" + name)) {
+      if (null != declared) {
         if (isClassVar) {
-          JavaClass scope = (JavaClass)parent.getStatement().getScope().getVariableScope("$" + name);
+          JavaClass scope = (JavaClass)declared;
           if (!scope.getFile().getPackage().getNamespace().equals(""))
             check.append(scope.getFile().getPackage().getNamespace() + "::");
           check.append("__" + scope.getName() + "::");
-        } else if (parent.getStatement().getScope().getVariableScope("$" + name).hasName("JavaClass")) {
+        } else if (declared instanceof JavaClass) {
           check.append("__this->");
         }
         check.append("$" + name);
@@ -2085,6 +2398,15 @@ public class JavaExpression extends Visitor implements Translatable {
       parent.getStatement().addObject(check.toString());
     }
 
+    /**
+     * Gets the class of the static variable referred to.
+     *
+     * @return The class or <code>null</code> if this is not a class variable.
+     */
+    protected JavaClass getReferencedClass() {
+      return isClassVar ? scope : null;
+    }
+
     /**
      * Determines the resulting type of the expression.
      */
@@ -2093,22 +2415,20 @@ public class JavaExpression extends Visitor implements Translatable {
         return;
 
       // Check if this is a variable currently in scope
-      if (parent.getStatement().getScope().isInScope("$" + name)) {
-        parent.setType(parent.getStatement().getScope().getVariableType("$" + name));
+      declared = parent.getStatement().getScope().getVariableScope(symbol);
+      if (null != declared) {
+        JavaType type = declared.getVariableType(symbol);
+        parent.setType(type);
         // Check if it's a class variable
-        if (parent.getStatement().getScope().getVariableScope("$" + name).hasName("JavaClass")
-            && parent.getStatement().getScope().getVariableType("$" + name).isStatic()) {
+        if (declared instanceof JavaClass && type.isStatic()) {
           isClassVar = true;
-          scope = (JavaClass)parent.getStatement().getScope().getVariableScope("$" + name);
+          scope = (JavaClass)declared;
         }
         return;
 
       // Check if this refers to a class
       } else {
-        Scope temp = parent.getStatement().getScope();
-        while (!temp.hasName("JavaClass"))
-          temp = temp.getParentScope();
-        JavaClass cls = (JavaClass)temp;
+        JavaClass cls = parent.getEnclosingClass();
         // Look in the current file, first
         for (JavaClass c : cls.getFile().getClasses()) {
           if (name.equals(c.getName())) {
@@ -2118,11 +2438,11 @@ public class JavaExpression extends Visitor implements Translatable {
             type.setStatic();
             parent.setType(type);
             return;
-          } else if (c.isInScope("$" + name) &&
-              c.getVariableType("$" + name).isStatic()) {
+          } else if (c.isInScope(symbol) &&
+              c.getVariableType(symbol).isStatic()) {
             isClassVar = true;
-            scope = (JavaClass)c.getVariableScope("$" + name);
-            parent.setType(c.getVariableType("$" + name));
+            scope = (JavaClass)c.getVariableScope(symbol);
+            parent.setType(c.getVariableType(symbol));
             return;
           }
         }
@@ -2137,11 +2457,11 @@ public class JavaExpression extends Visitor implements Translatable {
             type.setStatic();
             parent.setType(type);
             return;
-          } else if (f.getPublicClass().isInScope("$" + name) &&
-              f.getPublicClass().getVariableType("$" + name).isStatic()) {
+          } else if (f.getPublicClass().isInScope(symbol) &&
+              f.getPublicClass().getVariableType(symbol).isStatic()) {
             isClassVar = true;
-            scope = (JavaClass)f.getPublicClass().getVariableScope("$" + name);
-            parent.setType(f.getPublicClass().getVariableType("$" + name));
+            scope = (JavaClass)f.getPublicClass().getVariableScope(symbol);
+            parent.setType(f.getPublicClass().getVariableType(symbol));
             return;
           }
         }
@@ -2157,11 +2477,11 @@ public class JavaExpression extends Visitor implements Translatable {
               type.setStatic();
               parent.setType(type);
               return;
-            } else if (f.getPublicClass().isInScope("$" + name) &&
-                f.getPublicClass().getVariableType("$" + name).isStatic()) {
+            } else if (f.getPublicClass().isInScope(symbol) &&
+                f.getPublicClass().getVariableType(symbol).isStatic()) {
               isClassVar = true;
-              scope = (JavaClass)f.getPublicClass().getVariableScope("$" + name);
-              parent.setType(f.getPublicClass().getVariableType("$" + name));
+              scope = (JavaClass)f.getPublicClass().getVariableScope(symbol);
+              parent.setType(f.getPublicClass().getVariableType(symbol));
               return;
             }
           }
@@ -2181,9 +2501,7 @@ public class JavaExpression extends Visitor implements Translatable {
      * @return The output stream.
      */
     public Printer translate(Printer out) {
-      // Now that we have all classes available, determine the type
-      determineType();
-      
+
       // If it's a static class variable, print out the class first
       if (isClassVar) {
         if (!scope.getFile().getPackage().getNamespace().equals(""))
@@ -2192,9 +2510,9 @@ public class JavaExpression extends Visitor implements Translatable {
       }
 
       // Check if it's a variable currently in scope
-      if (parent.getStatement().getScope().isInScope("$" + name)) {
+      if (null != declared) {
         // Check if it's an instance variable
-        if (parent.getStatement().getScope().getVariableScope("$" + name).hasName("JavaClass"))
+        if (declared instanceof JavaClass)
           out.p("__this->");
         return out.p("$").p(name);
 
@@ -2224,6 +2542,7 @@ public class JavaExpression extends Visitor implements Translatable {
     private JavaClass cls;
     private JavaExpression identifier, parent;
     private String selection;
+    private int symbol;
 
     /**
      * Creates a new selection expression.
@@ -2239,18 +2558,38 @@ public class JavaExpression extends Visitor implements Translatable {
       else
         identifier = new JavaExpression(n.getGeneric(0), parent.getStatement());
       selection = n.getString(1);
+      symbol = Symbol.variable(selection);
     }
 
     /**
      * Makes sure to call checkNotNull on this variable.
      */
     public void checkNotNull() {
-      determineType();
       if (null != identifier && (identifier.hasName("CallExpression") || 
           (!identifier.getType().isArray() && isClass)))
         identifier.checkNotNull();
     }
 
+    /**
+     * Attributes the subexpressions of the expression.
+     */
+    protected void attributeSubexpressions() {
+      if (null != identifier)
+        identifier.attribute();
+    }
+
+    /**
+     * Gets the class of the static variable selected.
+     *
+     * @return The class or <code>null</code> if this is not a class variable.
+     */
+    protected JavaClass getReferencedClass() {
+      if (isStatic || (isVariable && null != identifier &&
+          identifier.getType().isStatic()))
+        return cls;
+      return null;
+    }
+
     /**
      * Determines the resulting type of the expression.
      */
@@ -2262,12 +2601,9 @@ public class JavaExpression extends Visitor implements Translatable {
         name = identifier.getType().getType();
       else
         name = selection;
-      Scope temp = parent.getStatement().getScope();
-      while (!temp.hasName("JavaClass"))
-        temp = temp.getParentScope();
-      cls = (JavaClass)temp;
+      cls = parent.getEnclosingClass();
       if (isThis || isSuper) {
-        parent.setType(parent.getStatement().getScope().getVariableType("$" + selection));
+        parent.setType(parent.getStatement().getScope().getVariableType(symbol));
         isVariable = true;
         return;
       }
@@ -2276,12 +2612,12 @@ public class JavaExpression extends Visitor implements Translatable {
       for (JavaClass c : cls.getFile().getClasses()) {
         if (name.equals(c.getName())) {
           cls = c;
-          if (cls.isInScope("$" + selection) && cls.isVariableStatic("$" + selection)) {
-            parent.setType(cls.getVariableType("$" + selection));
+          if (cls.isInScope(symbol) && cls.isVariableStatic(symbol)) {
+            parent.setType(cls.getVariableType(symbol));
             isVariable = true;
             isStatic = true;
-          } else if (cls.isInScope("$" + selection)) {
-            parent.setType(cls.getVariableType("$" + selection));
+          } else if (cls.isInScope(symbol)) {
+            parent.setType(cls.getVariableType(symbol));
             isVariable = true;
           } else {
             JavaType type = new JavaType(selection);
@@ -2299,8 +2635,8 @@ public class JavaExpression extends Visitor implements Translatable {
         if (name.equals(f.getPublicClass().getName())) {
           cls = f.getPublicClass();
           if (null != identifier && identifier.getType().isStatic() &&
-            cls.isInScope("$" + selection)) {
-            parent.setType(cls.getVariableType("$" + selection));
+            cls.isInScope(symbol)) {
+            parent.setType(cls.getVariableType(symbol));
             isVariable = true;
           } else {
             JavaType type = new JavaType(selection);
@@ -2319,8 +2655,8 @@ public class JavaExpression extends Visitor implements Translatable {
           if (name.equals(f.getPublicClass().getName())) {
             cls = f.getPublicClass();
             if (null != identifier && identifier.getType().isStatic() &&
-              cls.isInScope("$" + selection)) {
-              parent.setType(cls.getVariableType("$" + selection));
+              cls.isInScope(symbol)) {
+              parent.setType(cls.getVariableType(symbol));
               isVariable = true;
             } else {
               JavaType type = new JavaType(selection);
@@ -2344,7 +2680,6 @@ public class JavaExpression extends Visitor implements Translatable {
      * @return The output stream.
      */
     public Printer translate(Printer out) {
-      determineType();
       if (isThis || isSuper) {
         out.p("__this->");
         return out.p("$").p(selection);
@@ -2379,6 +2714,7 @@ public class JavaExpression extends Visitor implements Translatable {
   private class SubscriptExpression extends JavaExpression {
 
     private GNode n;
+    private int symbol;
     private JavaExpression variable, parent;
     private List<JavaExpression> indices;
 
@@ -2391,6 +2727,8 @@ public class JavaExpression extends Visitor implements Translatable {
     public SubscriptExpression(GNode n, JavaExpression parent) {
       this.n = n;
       this.parent = parent;
+      if (n.getNode(0).hasName("PrimaryIdentifier"))
+        symbol = Symbol.variable(n.getNode(0).getString(0));
       variable = new JavaExpression(n.getGeneric(0), parent.getStatement());
       indices = new ArrayList<JavaExpression>();
       for (int i = 1; i < n.size(); i++)
@@ -2402,8 +2740,9 @@ public class JavaExpression extends Visitor implements Translatable {
      */
     public void checkNotNull() {
       if (n.getNode(0).hasName("PrimaryIdentifier") &&
-          parent.getStatement().getScope().isInScope("$" + n.getNode(0).getString(0))) {
-        if (parent.getStatement().getScope().getVariableScope("$" + n.getNode(0).getString(0)).equals("JavaClass")) {
+          parent.getStatement().getScope().isInScope(symbol)) {
+        Scope declared = parent.getStatement().getScope().getVariableScope(symbol);
+        if (declared instanceof JavaClass && !declared.isVariableStatic(symbol)) {
           parent.getStatement().addObject("__this->$" + n.getNode(0).getString(0));
         } else {
           parent.getStatement().addObject("$" + n.getNode(0).getString(0));
@@ -2418,6 +2757,15 @@ public class JavaExpression extends Visitor implements Translatable {
       }
     }
 
+    /**
+     * Attributes the subexpressions of the expression.
+     */
+    protected void attributeSubexpressions() {
+      variable.attribute();
+      for (JavaExpression e : indices)
+        e.attribute();
+    }
+
     /**
      * Determines the resulting type of the expression.
      */
@@ -2436,7 +2784,6 @@ public class JavaExpression extends Visitor implements Translatable {
      * @return The output stream.
      */
     public Printer translate(Printer out) {
-      determineType();
       for (JavaExpression e : indices)
         out.p("(*");
       variable.translate(out);
@@ -2485,6 +2832,13 @@ public class JavaExpression extends Visitor implements Translatable {
         identifier.checkNotNull();
     }
 
+    /**
+     * Attributes the subexpressions of the expression.
+     */
+    protected void attributeSubexpressions() {
+      identifier.attribute();
+    }
+
     /**
      * Determines the resulting type of the expression.
      */
@@ -2503,7 +2857,6 @@ public class JavaExpression extends Visitor implements Translatable {
      * @return The output stream.
      */
     public Printer translate(Printer out) {
-      determineType();
       if (pre != null) {
         out.p(pre);
         return identifier.translate(out);
@@ -2549,7 +2902,6 @@ public class JavaExpression extends Visitor implements Translatable {
      * @return The output stream.
      */
     public Printer translate(Printer out) {
-      determineType();
       return out;
     }
 
@@ -2567,7 +2919,109 @@ public class JavaExpression extends Visitor implements Translatable {
     * @return The output stream.
     */
   public Printer translate(Printer out) {
+    attribute();
+    translations.incrementAndGet();
     return e.translate(out);
   }
 
+  /**
+   * Opens the tag giving the source file, line, and allocated
+   * type of a new expression to the allocation profiler; the
+   * caller closes it after the expression.
+   *
+   * @param out The output stream.
+   * @param allocated The type allocated.
+   *
+   * @return The output stream.
+   */
+  private Printer translateSite(Printer out, JavaType allocated) {
+    JavaFile file = enclosingClass.getFile();
+    String path = file.getPackage().getPath();
+    String name = file.getSource().getName();
+    if (!path.equals(""))
+      name = path + "/" + name;
+    StringBuilder type = new StringBuilder(allocated.getJavaType());
+    for (int i = 0; i < allocated.getDimensions(); i++)
+      type.append("[]");
+    int line = null == node.getLocation() ? 0 : node.getLocation().line;
+    return out.p("__rt::tag(PCP_SITE(\"").p(escape(name)).p("\", ").p(line)
+      .p(", \"").p(type.toString()).p("\"), ");
+  }
+
+  /**
+   * Escapes backslashes and quotes for a C++ string literal.
+   *
+   * @param s The string.
+   *
+   * @return The escaped string.
+   */
+  static String escape(String s) {
+    return s.replace("\\", "\\\\").replace("\"", "\\\"");
+  }
+
+
+  // ========================== Static Methods ======================
+
+  /**
+   * Sets whether to allocate rectangular two-dimensional
+   * arrays of primitives as one contiguous block.
+   *
+   * @param enabled Whether to flatten arrays.
+   */
+  public static void setFlattenArrays(boolean enabled) {
+    flattenArrays = enabled;
+  }
+
+  /**
+   * Sets whether to tag each class and array allocation with
+   * its site for the allocation profiler of the runtime.
+   *
+   * @param enabled Whether to tag allocations.
+   */
+  public static void setProfileAllocations(boolean enabled) {
+    profileAllocations = enabled;
+  }
+
+  /**
+   * Sets whether all code has been attributed.  Packages
+   * written in parallel then only read what attribution
+   * computed for the code of other packages, so attributing
+   * an expression afterwards is an error, except for the
+   * bodies reparsed when streaming, whose attribution
+   * repeats that of the pass.
+   *
+   * @param enabled Whether the attribution is frozen.
+   */
+  public static void setFrozen(boolean enabled) {
+    frozen = enabled;
+  }
+
+  /**
+   * Gets the number of expressions created.
+   *
+   * @return The number of expressions.
+   */
+  public static int getExpressions() {
+    return expressions.get();
+  }
+
+  /**
+   * Gets the number of expressions attributed.
+   *
+   * @return The number of expressions.
+   */
+  public static int getAttributions() {
+    return attributions.get();
+  }
+
+  /**
+   * Gets the number of times expressions have been translated,
+   * counting each repeated translation of the same expression.
+   *
+   * @return The number of translations.
+   */
+  public static int getTranslations() {
+    return translations.get();
+  }
+
 }
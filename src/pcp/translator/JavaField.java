@@ -19,8 +19,10 @@ package pcp.translator;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import xtc.tree.GNode;
 import xtc.tree.Node;
@@ -48,9 +50,15 @@ public class JavaField extends JavaStatement implements Translatable {
   // The names of the variables declared
   private List<String> names;
 
+  // The symbols of the variables declared
+  private List<Integer> symbols;
+
   // The statement wrapper
   private JavaStatement parent;
 
+  // The classes whose static state the initial values use
+  private Set<JavaClass> references;
+
   // The type of the field
   private JavaType type;
 
@@ -73,10 +81,7 @@ public class JavaField extends JavaStatement implements Translatable {
    */
   public JavaField(GNode n, JavaStatement parent, Scope scope) {
     // Set the parent class
-    Scope temp = scope;
-    while (!temp.hasName("JavaClass"))
-      temp = temp.getParentScope();
-    cls = (JavaClass)temp;
+    cls = scope.getEnclosingClass();
     
     // Set the statement wrapper
     this.parent = parent;
@@ -106,14 +111,18 @@ public class JavaField extends JavaStatement implements Translatable {
 
     // Get the variable names and initialized values
     names = new ArrayList<String>();
+    symbols = new ArrayList<Integer>();
     values = new ArrayList<JavaExpression>();
+    references = new LinkedHashSet<JavaClass>();
     for (Object o : n.getNode(2)) {
       Node declarator = (Node)o;
+      int symbol = Symbol.variable(declarator.getString(0));
       names.add("$" + declarator.getString(0));
+      symbols.add(symbol);
       if (null == this.parent)
-        cls.addVariable("$" + declarator.getString(0), type);
+        cls.addVariable(symbol, type);
       else
-        this.parent.getScope().addVariable("$" + declarator.getString(0), type);
+        this.parent.getScope().addVariable(symbol, type);
       if (null != declarator.get(2)) {
         if (null != parent)
           values.add(new JavaExpression(declarator.getGeneric(2), parent));
@@ -153,6 +162,39 @@ public class JavaField extends JavaStatement implements Translatable {
     return names;
   }
 
+  /**
+   * Gets the symbols of variables declared.
+   *
+   * @return The variable symbols.
+   */
+  public List<Integer> getSymbols() {
+    return symbols;
+  }
+
+  /**
+   * Gets the classes whose static state the initial values
+   * use, attributing the values first.
+   *
+   * @return The classes.
+   */
+  public Set<JavaClass> getReferences() {
+    attribute();
+    return references;
+  }
+
+  /**
+   * Attributes the initial values.
+   */
+  public void attribute() {
+    Reachability.Uses uses = Reachability.getUses(getEnclosingMethod(), cls);
+    if (null != uses)
+      uses.addClass(cls.getFile(), type);
+    for (JavaExpression e : values) {
+      if (null != e)
+        e.attribute();
+    }
+  }
+
   /**
    * Gets the scope the field is in.
    *
@@ -162,6 +204,27 @@ public class JavaField extends JavaStatement implements Translatable {
     return cls;
   }
 
+  /**
+   * Gets the class the field is in.
+   *
+   * @return The class.
+   */
+  public JavaClass getEnclosingClass() {
+    return cls;
+  }
+
+  /**
+   * Gets the method or constructor the field is declared in.
+   *
+   * @return The method if this is a local variable;
+   * <code>null</code> otherwise.
+   */
+  public JavaMethod getEnclosingMethod() {
+    if (null == parent)
+      return null;
+    return parent.getEnclosingMethod();
+  }
+
   /**
    * Gets the type of the field.
    *
@@ -198,6 +261,16 @@ public class JavaField extends JavaStatement implements Translatable {
 
   // ============================ Set Methods =======================
 
+  /**
+   * Records a class whose static state the initial values use.
+   *
+   * @param cls The class.
+   */
+  public void addReference(JavaClass cls) {
+    if (null != cls)
+      references.add(cls);
+  }
+
   /**
    * Makes sure to compile a full list of variables to check
    * not null on.
@@ -267,6 +340,42 @@ public class JavaField extends JavaStatement implements Translatable {
     return out;
   }
 
+  /**
+   * Translates the field into entries of the pointer
+   * map used by the collectors and adds it to
+   * the output stream.
+   *
+   * @param out The output stream.
+   *
+   * @return The output stream.
+   */
+  public Printer translateTrace(Printer out) {
+    if (isStatic || type.isPrimitive())
+      return out;
+    for (String name : names) {
+      out.indent().p("__rt::trace(__this->").p(name).pln(", __visit);");
+    }
+    return out;
+  }
+
+  /**
+   * Translates the static field into entries of the
+   * root set used by the mark-sweep collector and adds
+   * it to the output stream.
+   *
+   * @param out The output stream.
+   *
+   * @return The output stream.
+   */
+  public Printer translateStaticTrace(Printer out) {
+    if (!isStatic || type.isPrimitive())
+      return out;
+    for (String name : names) {
+      out.indent().p("__rt::trace(__").p(cls.getName()).p("::").p(name).pln(", __visit);");
+    }
+    return out;
+  }
+
   /**
    * Translates the field instantiation and adds it 
    * to the output stream.
@@ -17,13 +17,25 @@
  */
 package pcp.translator;
 
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import xtc.lang.JavaFiveParser;
+
+import xtc.parser.ParseException;
+import xtc.parser.Result;
+
 import xtc.tree.GNode;
 import xtc.tree.Node;
 import xtc.tree.Printer;
@@ -50,6 +62,9 @@ public class JavaFile extends Visitor implements Translatable {
   // The imported packages
   private Set<JavaPackage> imports;
 
+  // A cache of the classes that simple names in the file refer to
+  private Map<String, JavaClass> names;
+
   // Whether this is the main file specified by the user
   private boolean isMain;
 
@@ -59,6 +74,18 @@ public class JavaFile extends Visitor implements Translatable {
   // The public class in this file
   private JavaClass publicClass;
 
+  // The source file
+  private File source;
+
+  // Whether to drop the class bodies until the file is written
+  private static boolean streaming;
+
+  // The library classes outside java.lang that the runtime provides
+  private static final Set<String> library = new HashSet<String>();
+  static {
+    library.add("java.util.Arrays");
+  }
+
 
   // =========================== Constructors =======================
   
@@ -71,8 +98,11 @@ public class JavaFile extends Visitor implements Translatable {
     // Initialize the classes list
     allClasses = new ArrayList<JavaClass>();
 
-    // Initialize the imports set
-    imports = new HashSet<JavaPackage>();
+    // Initialize the imports set, keeping the order of the declarations
+    imports = new LinkedHashSet<JavaPackage>();
+
+    // Initialize the name cache
+    names = new HashMap<String, JavaClass>();
 
     // Dispatch over the nodes in the file
     for (Object o : n) {
@@ -94,7 +124,7 @@ public class JavaFile extends Visitor implements Translatable {
 
     // Add the public class to the classes map
     for (JavaClass c : allClasses) {
-      JavaClass.addClass(pkg.getPath() + c.getName(), c);
+      JavaClass.addClass(pkg.getQualifiedName(c.getName()), c);
     }
   }
 
@@ -110,6 +140,51 @@ public class JavaFile extends Visitor implements Translatable {
     return allClasses;
   }
 
+  /**
+   * Gets the class a type refers to from within the file.
+   * Qualified types are looked up by their full name, and
+   * simple names are resolved against the file's package
+   * and then the imported packages.
+   *
+   * @param type The type.
+   *
+   * @return The class if it is found;
+   * <code>null</code> otherwise.
+   */
+  public JavaClass getJavaClass(JavaType type) {
+    if (type.isArray() || null == type.getClassType())
+      return null;
+    if (null != type.getPackage())
+      return JavaClass.getJavaClass(type.getPackage().getQualifiedName(type.getClassType()));
+    return getJavaClass(type.getClassType());
+  }
+
+  /**
+   * Gets the class a simple name refers to from within the
+   * file, caching the result for later lookups.
+   *
+   * @param name The simple name of the class.
+   *
+   * @return The class if it is found;
+   * <code>null</code> otherwise.
+   */
+  public JavaClass getJavaClass(String name) {
+    JavaClass cls = names.get(name);
+    if (null != cls)
+      return cls;
+    cls = pkg.getJavaClass(name);
+    if (null == cls) {
+      for (JavaPackage imp : imports) {
+        cls = imp.getJavaClass(name);
+        if (null != cls)
+          break;
+      }
+    }
+    if (null != cls)
+      names.put(name, cls);
+    return cls;
+  }
+
   /**
    * Gets a list of the import declarations.
    *
@@ -128,6 +203,15 @@ public class JavaFile extends Visitor implements Translatable {
     return pkg;
   }
   
+  /**
+   * Gets the source file.
+   *
+   * @return The source file.
+   */
+  public File getSource() {
+    return source;
+  }
+
   /**
    * Gets the public class.
    *
@@ -152,27 +236,32 @@ public class JavaFile extends Visitor implements Translatable {
   // ============================ Set Methods =======================
 
   /**
-   * Orders classes in by dependencies.
+   * Sets the source file.
+   *
+   * @param source The source file.
    */
-  public void orderClasses() {
-    List<JavaClass> old = allClasses;
-    allClasses = new ArrayList<JavaClass>();
-    for (JavaClass cls : old) {
-      order(cls);
-    }
+  public void setSource(File source) {
+    this.source = source;
   }
 
   /**
-   * Recursively orders classes based on dependencies.
-   *
-   * @param cls The class to add to the list.
+   * Orders classes by their dependencies within the file.
    */
-  private void order(JavaClass cls) {
-    if (allClasses.contains(cls))
-      return;
-    if (cls.hasParent() && cls.getParent().getFile() == this)
-      order(cls.getParent());
-    allClasses.add(cls);
+  public void orderClasses() {
+    allClasses = new DependencyOrder<JavaClass>("classes") {
+      protected Collection<JavaClass> getDependencies(JavaClass cls) {
+        List<JavaClass> parent = new ArrayList<JavaClass>(1);
+        if (cls.hasParent())
+          parent.add(cls.getParent());
+        return parent;
+      }
+      protected Collection<JavaClass> getReferences(JavaClass cls) {
+        return cls.getReferences();
+      }
+      protected String getName(JavaClass cls) {
+        return cls.getName();
+      }
+    }.order(allClasses);
   }
 
   /**
@@ -219,6 +308,22 @@ public class JavaFile extends Visitor implements Translatable {
     JavaPackage imp = new JavaPackage(n);
     String pkgpath = imp.getPath();
 
+    // The classes of java.lang and the few other library classes
+    // the runtime provides are not looked up; any other library
+    // import is, and is reported as missing
+    if (imp.getPackagename().equals("java.lang"))
+      return;
+    if (null == n.get(2)) {
+      StringBuilder name = new StringBuilder();
+      for (int i = 0; i < n.getNode(1).size(); i++) {
+        if (0 < i)
+          name.append('.');
+        name.append(n.getNode(1).getString(i));
+      }
+      if (library.contains(name.toString()))
+        return;
+    }
+
     // If the package has already been created, use the existing one
     if (null != JavaPackage.getJavaPackage(pkgpath))
       imp = JavaPackage.getJavaPackage(pkgpath);
@@ -254,6 +359,18 @@ public class JavaFile extends Visitor implements Translatable {
 
   // ===================== Translation Methods ======================
 
+  /**
+   * Attributes the code of all classes in the file, reparsing
+   * the bodies first if only the signatures are kept.
+   */
+  public void attribute() {
+    load();
+    for (JavaClass cls : allClasses) {
+      cls.attribute();
+    }
+    release();
+  }
+
   /**
    * Translates the classes in the file and
    * writes them to the output stream.
@@ -270,6 +387,67 @@ public class JavaFile extends Visitor implements Translatable {
   }
 
 
+  /**
+   * Parses the source file again and recreates the bodies
+   * of its classes, if they were released after the file
+   * was resolved.
+   */
+  public void load() {
+    if (!streaming)
+      return;
+    try {
+      Reader in = new FileReader(source);
+      try {
+        JavaFiveParser parser =
+          new JavaFiveParser(in, source.toString(), (int)source.length());
+        Result result = parser.pCompilationUnit(0);
+        load((GNode)parser.value(result));
+      } finally {
+        in.close();
+      }
+    } catch (IOException e) {
+      pcp.Translator.errConsole.p("Error reading file: ").pln(source.getPath()).flush();
+    } catch (ParseException e) {
+      pcp.Translator.errConsole.p("Error parsing file: ").pln(source.getPath()).flush();
+    }
+  }
+
+  /**
+   * Creates the bodies of the classes in the file again
+   * from the AST after they have been released.  The bodies
+   * are built by visitors, whose method lookup in xtc shares
+   * an unsynchronized cache, so files written in parallel
+   * are rebuilt one at a time.
+   *
+   * @param n The AST node.
+   */
+  public void load(GNode n) {
+    synchronized (Visitor.class) {
+      for (Object o : n) {
+        if (o instanceof Node && ((Node)o).hasName("ClassDeclaration")) {
+          GNode d = (GNode)o;
+          for (JavaClass cls : allClasses) {
+            if (cls.getName().equals(d.getString(1)))
+              cls.load(d);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Drops the bodies of the classes in the file until it
+   * is written, if requested.
+   */
+  public void release() {
+    if (!streaming)
+      return;
+    for (JavaClass cls : allClasses) {
+      cls.release();
+    }
+  }
+
+
   // ========================== Static Methods ======================
 
   /**
@@ -282,6 +460,29 @@ public class JavaFile extends Visitor implements Translatable {
     files.put(path, file);
   }
 
+  /**
+   * Sets whether the class bodies are dropped after the
+   * file is resolved and parsed again when it is written,
+   * so that only the signatures of all files are kept in
+   * memory at once.
+   *
+   * @param enabled Whether to stream the class bodies.
+   */
+  public static void setStreaming(boolean enabled) {
+    streaming = enabled;
+  }
+
+  /**
+   * Checks if the class bodies are dropped after the file is
+   * resolved and parsed again when it is written.
+   *
+   * @return <code>True</code> if the bodies are streamed;
+   * <code>false</code> otherwise.
+   */
+  public static boolean isStreaming() {
+    return streaming;
+  }
+
   /**
    * Gets the JavaFile specified by the filepath.
    *
@@ -55,6 +55,9 @@ public class JavaMethod extends Visitor implements Translatable {
   // The name of the method
   private String name;
 
+  // The line of the declaration in the Java source
+  private int line;
+
   // The parameters of the method
   private LinkedHashMap<String, JavaType> parameters; 
 
@@ -64,6 +67,12 @@ public class JavaMethod extends Visitor implements Translatable {
   // The visibility level of the method
   private JavaVisibility visibility;
 
+  // What the body uses, recorded for dead code elimination
+  private Reachability.Uses uses;
+
+  // Whether the method is reachable from the main method
+  private boolean isReachable = true;
+
 
   // =========================== Constructors =======================
   
@@ -83,6 +92,9 @@ public class JavaMethod extends Visitor implements Translatable {
     // Set the class
     this.cls = cls;
 
+    // Remember where it is declared for #line directives
+    line = null == n.getLocation() ? 0 : n.getLocation().line;
+
     // Set the default visibility
     visibility = JavaVisibility.PACKAGE_PRIVATE;
 
@@ -108,7 +120,7 @@ public class JavaMethod extends Visitor implements Translatable {
     name = s.toString();
 
     // Create the body of the method
-    body = new JavaBlock(n.getGeneric(7), cls, this);
+    load(n);
 
   }
 
@@ -180,6 +192,28 @@ public class JavaMethod extends Visitor implements Translatable {
     return true;
   }
 
+  /**
+   * Returns <code>true</code> unless dead code elimination
+   * found the method unreachable from the main method.
+   *
+   * @return <code>True</code> if the method is reachable;
+   * <code>false</code> otherwise.
+   */
+  public boolean isReachable() {
+    return isReachable;
+  }
+
+  /**
+   * Gets what the body uses, once it has been attributed.
+   *
+   * @return The uses.
+   */
+  Reachability.Uses getUses() {
+    if (null == uses)
+      uses = new Reachability.Uses();
+    return uses;
+  }
+
   /**
    * Returns <code>true</code> if this method is static.
    *
@@ -193,11 +227,13 @@ public class JavaMethod extends Visitor implements Translatable {
   /**
    * Checks if the specified variable is static.
    *
+   * @param symbol The symbol of the variable.
+   *
    * @return <code>True</code> if the variable is static;
    * <code>false</code> otherwise.
    */
-  public boolean isVariableStatic(String name) {
-    return cls.isVariableStatic(name);
+  public boolean isVariableStatic(int symbol) {
+    return cls.isVariableStatic(symbol);
   }
 
   /**
@@ -211,6 +247,18 @@ public class JavaMethod extends Visitor implements Translatable {
   }
 
 
+  // ============================ Set Methods =======================
+
+  /**
+   * Sets whether the method is reachable from the main method.
+   *
+   * @param reachable Whether the method is reachable.
+   */
+  public void setReachable(boolean reachable) {
+    isReachable = reachable;
+  }
+
+
   // =========================== Visit Methods ======================
 
   /**
@@ -375,6 +423,9 @@ public class JavaMethod extends Visitor implements Translatable {
    * @return The output stream.
    */
   public Printer translateVTableReference(Printer out, JavaClass caller) {
+    // Leave the slot empty if nothing can call the method
+    if (!isReachable)
+      return out.indent().p(name).p("(0)");
     out.indent().p(name).p("(");
     if (caller != cls) {
       out.p("(").p(returnType.getType()).p("(*)(").p(caller.getName());
@@ -393,6 +444,14 @@ public class JavaMethod extends Visitor implements Translatable {
     return out.p(")");
   }
 
+  /**
+   * Attributes the expressions of the body.
+   */
+  public void attribute() {
+    if (null != body)
+      body.attribute();
+  }
+
   /**
    * Translates the method into C++ and writes
    * it to the output stream.
@@ -402,6 +461,7 @@ public class JavaMethod extends Visitor implements Translatable {
    * @return The output stream.
    */
   public Printer translate(Printer out) {
+    JavaStatement.translateLine(out, cls, line);
     out.indent();
     returnType.translate(out).p(" ");
     out.p("__").p(cls.getName()).p("::").p(name).p("(");
@@ -426,7 +486,24 @@ public class JavaMethod extends Visitor implements Translatable {
     out.pln(") {").incr();
     body.translate(out);
     out.decr().indent().pln("}");
-    return out;
+    return JavaStatement.translateOutputLine(out);
+  }
+
+  /**
+   * Creates the body of the method from its declaration.
+   *
+   * @param n The method declaration node.
+   */
+  public void load(GNode n) {
+    body = new JavaBlock(n.getGeneric(7), cls, this);
+  }
+
+  /**
+   * Drops the body of the method once it has been translated,
+   * so that its statements and their AST nodes can be collected.
+   */
+  public void release() {
+    body = null;
   }
 
 }
@@ -18,11 +18,14 @@
 package pcp.translator;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
 
 import xtc.tree.GNode;
 import xtc.tree.Printer;
@@ -47,8 +50,9 @@ public class JavaPackage implements Translatable {
   // The default package name
   final private static String DEFAULT = "$main";  
 
-  // Mapping of package paths to the corresponding JavaPackage objects
-  private static Map<String, JavaPackage> packages = new HashMap<String, JavaPackage>();
+  // Mapping of package paths to the corresponding JavaPackage objects,
+  // sorted so the packages are always written in the same order
+  private static Map<String, JavaPackage> packages = new TreeMap<String, JavaPackage>();
   
   // The parts of the package name
   private List<String> pkg;
@@ -59,9 +63,15 @@ public class JavaPackage implements Translatable {
   // The files in the package
   private List<JavaFile> files;
 
+  // A map from simple names to the classes declared in the package
+  private Map<String, JavaClass> classes;
+
   // The main file for the package
   private JavaFile main;
 
+  // Whether the packages are translated into one unity file
+  private static boolean unity;
+
 
   // =========================== Constructors =======================
   
@@ -75,8 +85,9 @@ public class JavaPackage implements Translatable {
     // Initialize the empty package set
     pkg = new ArrayList<String>();
 
-    // Initialize the file list
+    // Initialize the file list and class index
     files = new ArrayList<JavaFile>();
+    classes = new HashMap<String, JavaClass>();
   }
   
   /**
@@ -100,8 +111,9 @@ public class JavaPackage implements Translatable {
       pkg.add(n.getNode(1).getString(i));
     }
 
-    // Initialize the file list
+    // Initialize the file list and class index
     files = new ArrayList<JavaFile>();
+    classes = new HashMap<String, JavaClass>();
   }
 
   /**
@@ -113,8 +125,9 @@ public class JavaPackage implements Translatable {
     // Use the list s as the package
     pkg = s;
 
-    // Initialize the file list
+    // Initialize the file list and class index
     files = new ArrayList<JavaFile>();
+    classes = new HashMap<String, JavaClass>();
   }
 
 
@@ -141,6 +154,44 @@ public class JavaPackage implements Translatable {
     return files;
   }
 
+  /**
+   * Gets the other packages imported by the files
+   * in the package, sorted by their paths.
+   *
+   * @return The imported packages.
+   */
+  public Set<JavaPackage> getImports() {
+    Map<String, JavaPackage> using = new TreeMap<String, JavaPackage>();
+    for (JavaFile file : files) {
+      Set<JavaPackage> imports = file.getImports();
+      for (JavaPackage i : imports) {
+        if (!i.getPath().equals(getPath()))
+          using.put(i.getPath(), i);
+      }
+    }
+    return new LinkedHashSet<JavaPackage>(using.values());
+  }
+
+  /**
+   * Gets the paths of the other packages containing
+   * superclasses of the classes in the package, sorted.
+   *
+   * @return The paths of the packages.
+   */
+  public Set<String> getParentPackages() {
+    Set<String> parents = new TreeSet<String>();
+    for (JavaFile file : files) {
+      for (JavaClass cls : file.getClasses()) {
+        if (null == cls.getParent())
+          continue;
+        String path = cls.getParent().getFile().getPackage().getPath();
+        if (!path.equals(getPath()))
+          parents.add(path);
+      }
+    }
+    return parents;
+  }
+
   /**
    * Gets the package as a namespace.
    *
@@ -174,6 +225,32 @@ public class JavaPackage implements Translatable {
     return packagename;
   }
 
+  /**
+   * Gets the fully qualified name of a class in the package.
+   *
+   * @param name The simple name of the class.
+   *
+   * @return The qualified name.
+   */
+  public String getQualifiedName(String name) {
+    if (0 == pkg.size())
+      return name;
+    return getPackagename() + "." + name;
+  }
+
+  /**
+   * Gets the class of the specified simple name declared
+   * in the package.
+   *
+   * @param name The simple name of the class.
+   *
+   * @return The class if it is in the package;
+   * <code>null</code> otherwise.
+   */
+  public JavaClass getJavaClass(String name) {
+    return classes.get(name);
+  }
+
   /**
    * Gets the package as a path.
    *
@@ -215,32 +292,48 @@ public class JavaPackage implements Translatable {
    */
   public void addFile(JavaFile file) {
     files.add(file);
+    for (JavaClass c : file.getClasses())
+      classes.put(c.getName(), c);
   }
 
   /**
-   * Orders the files based on dependencies.
+   * Orders the files by the dependencies of their classes
+   * within the package, and the classes within each file.
+   * The headers of other packages declare the classes in
+   * this order, so all packages are ordered before any is
+   * written.
    */
   public void orderFiles() {
-    List<JavaFile> old = files;
-    files = new ArrayList<JavaFile>();
-    for (JavaFile file : old) {
-      order(file);
+    for (JavaFile file : files) {
+      if (file.isMain())
+        main = file;
+    }
+    files = new DependencyOrder<JavaFile>("files") {
+      protected Collection<JavaFile> getDependencies(JavaFile file) {
+        Set<JavaFile> parents = new LinkedHashSet<JavaFile>();
+        for (JavaClass cls : file.getClasses()) {
+          if (cls.hasParent())
+            parents.add(cls.getParent().getFile());
+        }
+        parents.remove(file);
+        return parents;
+      }
+      protected Collection<JavaFile> getReferences(JavaFile file) {
+        Set<JavaFile> references = new LinkedHashSet<JavaFile>();
+        for (JavaClass cls : file.getClasses()) {
+          for (JavaClass reference : cls.getReferences())
+            references.add(reference.getFile());
+        }
+        references.remove(file);
+        return references;
+      }
+      protected String getName(JavaFile file) {
+        return file.getSource().getName();
+      }
+    }.order(files);
+    for (JavaFile file : files) {
+      file.orderClasses();
     }
-  }
-
-  /**
-   * Recursively orders files based on dependencies.
-   *
-   * @param file The file to add to the list.
-   */
-  private void order(JavaFile file) {
-    if (file.isMain())
-      main = file;
-    if (files.contains(file))
-      return;
-    if (file.getPublicClass().hasParent())
-      order(file.getPublicClass().getParent().getFile());
-    files.add(file);
   }
 
   // =========================== Other Methods ======================
@@ -268,22 +361,27 @@ public class JavaPackage implements Translatable {
    */
   public Printer translateHeader(Printer out) {
     // Get any imports
-    Set<JavaPackage> using = new HashSet<JavaPackage>();
-    for (JavaFile file : files) {
-      Set<JavaPackage> imports = file.getImports();
-      for (JavaPackage i : imports) {
-        if (!i.getPath().equals(getPath()))
-          using.add(i);
-      }
-    }
+    Set<JavaPackage> using = getImports();
 
-    // Include any imported headers
-    out.pln("#pragma once").pln();
-    out.pln("#include <iostream>");
-    out.pln("#include <sstream>").pln();
-    out.pln("#include \"include/java_lang.h\"");
-    for (JavaPackage i : using) {
-      out.p("#include \"").p(i.getFilename()).pln(".h\"");
+    // Include the headers of packages with superclasses and only
+    // declare the classes of the others, or keep everything internal
+    // to the unity file
+    if (unity) {
+      out.pln("namespace {").pln();
+    } else {
+      Set<String> parents = getParentPackages();
+      out.pln("#pragma once").pln();
+      JavaClass.translateCollectorCheck(out);
+      out.pln("#include \"include/java_lang.h\"");
+      for (JavaPackage i : using) {
+        if (parents.contains(i.getPath()))
+          out.p("#include \"").p(i.getFilename()).pln(".h\"");
+      }
+      out.pln();
+      for (JavaPackage i : using) {
+        if (!parents.contains(i.getPath()))
+          i.translateDeclarations(out).pln();
+      }
     }
 
     // Declare namespaces being used
@@ -299,21 +397,13 @@ public class JavaPackage implements Translatable {
     }
 
     // Declare the class structs
-    for (JavaFile file : files) {
-      file.orderClasses();
-      for (JavaClass cls : file.getClasses()) {
-        String className = cls.getName();
-        out.indent().p("struct __").p(className).pln(";");
-        out.indent().p("struct __").p(className).pln("_VT;");
-        out.pln().indent().p("typedef __rt::Ptr<__").p(className).p("> ")
-          .p(className).pln(";").pln();
-      }
-    }
+    translateStructs(out);
 
-    // Print header structs
+    // Print header structs, leaving unreachable classes declared only
     for (JavaFile file : files) {
       for (JavaClass cls : file.getClasses()) {
-        cls.translateHeader(out).pln();
+        if (cls.isReachable())
+          cls.translateHeader(out).pln();
       }
     } 
 
@@ -321,10 +411,84 @@ public class JavaPackage implements Translatable {
     for (int i = 0; i < pkg.size(); i++) {
       out.decr().indent().pln("}");
     }
+    if (unity)
+      out.pln().pln("}").pln();
 
     return out;
   }
 
+  /**
+   * Declares the class structs and their pointer types
+   * within the package namespace, so that other headers
+   * can refer to the classes without including the
+   * package header.
+   *
+   * @param out The output stream.
+   *
+   * @return The output stream.
+   */
+  public Printer translateDeclarations(Printer out) {
+    for (String part : pkg) {
+      out.indent().p("namespace ").p(part).pln(" {").incr();
+    }
+    translateStructs(out);
+    for (int i = 0; i < pkg.size(); i++) {
+      out.decr().indent().pln("}");
+    }
+    return out;
+  }
+
+  /**
+   * Declares the class structs and their pointer types.
+   *
+   * @param out The output stream.
+   */
+  private void translateStructs(Printer out) {
+    for (JavaFile file : files) {
+      for (JavaClass cls : file.getClasses()) {
+        String className = cls.getName();
+        out.indent().p("struct __").p(className).pln(";");
+        out.indent().p("struct __").p(className).pln("_VT;");
+        out.pln().indent().p("typedef __rt::Ptr<__").p(className).p("> ")
+          .p(className).pln(";").pln();
+      }
+    }
+  }
+
+  /**
+   * Includes the headers needed by the body of the
+   * package: the standard streams, the package header,
+   * and the headers of all directly or indirectly
+   * imported packages.
+   *
+   * @param out The output stream.
+   */
+  private void translateIncludes(Printer out) {
+    out.pln("#include <iostream>");
+    out.pln("#include <sstream>").pln();
+    out.p("#include \"").p(getFilename()).pln(".h\"");
+    Set<JavaPackage> imported = new LinkedHashSet<JavaPackage>();
+    addImports(this, imported);
+    for (JavaPackage i : imported) {
+      out.p("#include \"").p(i.getFilename()).pln(".h\"");
+    }
+    out.pln();
+  }
+
+  /**
+   * Adds the packages imported by a package, directly or
+   * indirectly, to the set.
+   *
+   * @param pkg The package.
+   * @param imported The imported packages.
+   */
+  private void addImports(JavaPackage pkg, Set<JavaPackage> imported) {
+    for (JavaPackage i : pkg.getImports()) {
+      if (!i.getPath().equals(getPath()) && imported.add(i))
+        addImports(i, imported);
+    }
+  }
+
   /**
    * Translates the body of the package and
    * writes it to the output stream.
@@ -334,27 +498,30 @@ public class JavaPackage implements Translatable {
    * @return The output stream.
    */
   public Printer translate(Printer out) {
-    // Include the header file
-    out.p("#include \"").p(getFilename()).pln(".h\"").pln();
+    // Include the header files
+    if (!unity)
+      translateIncludes(out);
 
-    // Print the array template specializations for the classes in this package
-    out.pln("namespace __rt {").incr();
-    for (JavaFile f : files) {
-      for (JavaClass cls : f.getClasses()) {
-        cls.translateArrayTemplate(out);
-      }
-    }
-    out.decr().pln("}").pln();
+    // Print the array template specializations for the classes in this
+    // package; the unity file prints them all before any body
+    if (!unity)
+      translateArrayTemplates(out);
 
     // Add the namespace
+    if (unity)
+      out.pln("namespace {").pln();
     for (String part : pkg) {
       out.indent().p("namespace ").p(part).pln(" {").incr();
     }
 
-    // Print all the files in the package
+    // Print all the files in the package, dropping each class body
+    // as soon as it is written
     for (JavaFile f : files) {
+      f.load();
       for (JavaClass cls : f.getClasses()) {
-        cls.translate(out).pln();
+        if (cls.isReachable())
+          cls.translate(out).pln();
+        cls.release();
       }
       out.pln();
     }
@@ -363,21 +530,95 @@ public class JavaPackage implements Translatable {
     for (int i = 0; i < pkg.size(); i++) {
       out.decr().indent().pln("}");
     }
+    if (unity)
+      out.pln("}").pln();
 
     // If this package contains the main file, print the main method here
-    if (null != main) {
-      out.pln("int main(int argc, char *argv[]) {").incr();
-      out.indent().pln("__rt::Ptr<__rt::Array<String> > args = new __rt::Array<String>(argc-1);");
-      out.indent().pln("for (int i = 1; i < argc; i++) {").incr();
-      out.indent().pln("(*args)[i-1] = __rt::literal(argv[i]);");
+    if (null != main && main.getPublicClass().isMainClass())
+      translateMain(out);
+
+    return out;
+  }
+
+  /**
+   * Writes the array template specializations for the
+   * classes in the package to the output stream.
+   *
+   * @param out The output stream.
+   *
+   * @return The output stream.
+   */
+  public Printer translateArrayTemplates(Printer out) {
+    out.pln("namespace __rt {").incr();
+    for (JavaFile f : files) {
+      for (JavaClass cls : f.getClasses()) {
+        if (cls.isReachable())
+          cls.translateArrayTemplate(out);
+      }
+    }
+    out.decr().pln("}").pln();
+    return out;
+  }
+
+  /**
+   * Translates the body of a single class in the package
+   * and writes it to the output stream, so that each class
+   * can be compiled on its own.
+   *
+   * @param out The output stream.
+   * @param cls The class.
+   *
+   * @return The output stream.
+   */
+  public Printer translate(Printer out, JavaClass cls) {
+    // Include the header files
+    translateIncludes(out);
+
+    // Print the array template specializations for the class
+    out.pln("namespace __rt {").incr();
+    cls.translateArrayTemplate(out);
+    out.decr().pln("}").pln();
+
+    // Add the namespace
+    for (String part : pkg) {
+      out.indent().p("namespace ").p(part).pln(" {").incr();
+    }
+
+    // Print the class
+    cls.translate(out).pln();
+    cls.release();
+
+    // Close the namespace
+    for (int i = 0; i < pkg.size(); i++) {
       out.decr().indent().pln("}");
-      out.indent();
-      if (!getNamespace().equals(""))
-        out.p(getNamespace()).p("::");
-      out.p("__").p(main.getPublicClass().getName()).pln("::main$array1_String(args);");
-      out.decr().pln("}");
     }
 
+    // If this is the main class, print the main method here
+    if (null != main && main.getPublicClass() == cls && cls.isMainClass())
+      translateMain(out);
+
+    return out;
+  }
+
+  /**
+   * Translates the C++ main method calling the main
+   * class and writes it to the output stream.
+   *
+   * @param out The output stream.
+   *
+   * @return The output stream.
+   */
+  private Printer translateMain(Printer out) {
+    out.pln("int main(int argc, char *argv[]) {").incr();
+    out.indent().pln("__rt::Ptr<__rt::Array<String> > args = new __rt::Array<String>(argc-1);");
+    out.indent().pln("for (int i = 1; i < argc; i++) {").incr();
+    out.indent().pln("(*args)[i-1] = __rt::literal(argv[i]);");
+    out.decr().indent().pln("}");
+    out.indent();
+    if (!getNamespace().equals(""))
+      out.p(getNamespace()).p("::");
+    out.p("__").p(main.getPublicClass().getName()).pln("::main$array1_String(args);");
+    out.decr().pln("}");
     return out;
   }
 
@@ -405,6 +646,16 @@ public class JavaPackage implements Translatable {
     return packages.get(path);
   }
 
+  /**
+   * Sets whether the packages are translated into one
+   * unity file, with all translated code internal to it.
+   *
+   * @param enabled Whether to translate into a unity file.
+   */
+  public static void setUnity(boolean enabled) {
+    unity = enabled;
+  }
+
   /**
    * Gets the list of Java packages.
    *
@@ -19,7 +19,7 @@ package pcp.translator;
 
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -42,15 +42,25 @@ import xtc.tree.Visitor;
  */
 public class JavaStatement extends Visitor implements Translatable {
 
+  // Whether to write #line directives pointing at the Java source
+  private static boolean lineDirectives;
+
   // The AST node
   private GNode node;
 
   // The objects referenced within the statement, used for not null checks
   private Set<String> objects;
 
+  // Whether the objects have been collected
+  private boolean checked;
+
   // The scope in which this statement occurs
   private Scope parent;
 
+  // The class and method/constructor enclosing the statement
+  private JavaClass enclosingClass;
+  private JavaMethod enclosingMethod;
+
   // The specific instance of a nested class
   private JavaStatement s;
 
@@ -61,7 +71,7 @@ public class JavaStatement extends Visitor implements Translatable {
    * Empty constructor for subclass use only.
    */
   public JavaStatement() {
-    objects = new HashSet<String>();
+    objects = new LinkedHashSet<String>();
   }
 
   /**
@@ -74,7 +84,9 @@ public class JavaStatement extends Visitor implements Translatable {
   public JavaStatement(GNode n, Scope parent) {
     this.node = n;
     this.parent = parent;
-    objects = new HashSet<String>();
+    enclosingClass = parent.getEnclosingClass();
+    enclosingMethod = parent.getEnclosingMethod();
+    objects = new LinkedHashSet<String>();
     dispatch(n);
   }
 
@@ -102,6 +114,25 @@ public class JavaStatement extends Visitor implements Translatable {
     return parent;
   }
 
+  /**
+   * Gets the class enclosing the statement.
+   *
+   * @return The class.
+   */
+  public JavaClass getEnclosingClass() {
+    return enclosingClass;
+  }
+
+  /**
+   * Gets the method or constructor enclosing the statement.
+   *
+   * @return The method if the statement is within one;
+   * <code>null</code> otherwise.
+   */
+  public JavaMethod getEnclosingMethod() {
+    return enclosingMethod;
+  }
+
 
   // ============================ Set Methods =======================
   
@@ -115,6 +146,15 @@ public class JavaStatement extends Visitor implements Translatable {
       objects.add(obj);
   }
 
+  /**
+   * Records a class whose static state the statement uses.
+   *
+   * @param cls The class.
+   */
+  public void addReference(JavaClass cls) {
+    // Nothing to do here, overridden in JavaField
+  }
+
   /**
    * Makes sure to compile a full list of variables to check
    * not null on.
@@ -123,6 +163,15 @@ public class JavaStatement extends Visitor implements Translatable {
     // Nothing to do here, overridden in the nested classes
   }
 
+  /**
+   * Attributes the expressions of the statement and of any
+   * blocks nested in it, ahead of translation.
+   */
+  public void attribute() {
+    if (null != s)
+      s.attribute();
+  }
+
 
   // =========================== Visit Methods ======================
   
@@ -337,6 +386,16 @@ public class JavaStatement extends Visitor implements Translatable {
       e.checkNotNull();
     }
 
+    /**
+     * Attributes the expressions of the statement.
+     */
+    public void attribute() {
+      e.attribute();
+      ifStatement.attribute();
+      if (null != elseStatement)
+        elseStatement.attribute();
+    }
+
     /**
      * Translates the statement and adds it 
      * to the output stream.
@@ -438,6 +497,14 @@ public class JavaStatement extends Visitor implements Translatable {
       e.checkNotNull();
     }
 
+    /**
+     * Attributes the expressions of the statement.
+     */
+    public void attribute() {
+      s.attribute();
+      e.attribute();
+    }
+
     /**
      * Translates the statement and adds it 
      * to the output stream.
@@ -488,6 +555,13 @@ public class JavaStatement extends Visitor implements Translatable {
         e.checkNotNull();
     }
 
+    /**
+     * Attributes the expressions of the statement.
+     */
+    public void attribute() {
+      e.attribute();
+    }
+
     /**
      * Translates the statement and adds it 
      * to the output stream.
@@ -567,7 +641,7 @@ public class JavaStatement extends Visitor implements Translatable {
 
       // Add any variables to the scope of the for loop
       for (String var : vars) {
-        body.addVariable(var, type);
+        body.addVariable(Symbol.intern(var), type);
       }
     }
 
@@ -585,6 +659,29 @@ public class JavaStatement extends Visitor implements Translatable {
       }
     }
 
+    /**
+     * Attributes the expressions of the statement.
+     */
+    public void attribute() {
+      Reachability.Uses uses =
+        Reachability.getUses(body.getEnclosingMethod(), body.getEnclosingClass());
+      if (null != uses)
+        uses.addClass(body.getEnclosingClass().getFile(), type);
+      if (null != values) {
+        for (JavaExpression e : values) {
+          if (null != e)
+            e.attribute();
+        }
+      }
+      if (null != condition)
+        condition.attribute();
+      if (null != updates) {
+        for (JavaExpression e : updates)
+          e.attribute();
+      }
+      body.attribute();
+    }
+
     /**
      * Translates the statement and adds it 
      * to the output stream.
@@ -661,6 +758,14 @@ public class JavaStatement extends Visitor implements Translatable {
         e.checkNotNull();
     }
 
+    /**
+     * Attributes the expressions of the statement.
+     */
+    public void attribute() {
+      if (null != e)
+        e.attribute();
+    }
+
     /**
      * Translates the statement and adds it 
      * to the output stream.
@@ -734,6 +839,21 @@ public class JavaStatement extends Visitor implements Translatable {
       }
     }
 
+    /**
+     * Attributes the expressions of the statement.
+     */
+    public void attribute() {
+      variable.attribute();
+      for (JavaExpression e : cases) {
+        if (null != e)
+          e.attribute();
+      }
+      for (List<JavaStatement> caseActions : actions) {
+        for (JavaStatement action : caseActions)
+          action.attribute();
+      }
+    }
+
     /**
      * Translates the statement and adds it 
      * to the output stream.
@@ -821,6 +941,17 @@ public class JavaStatement extends Visitor implements Translatable {
       }
     }
 
+    /**
+     * Attributes the expressions of the statement.
+     */
+    public void attribute() {
+      tryBlock.attribute();
+      if (null != catchBlock)
+        catchBlock.attribute();
+      if (null != finallyBlock)
+        finallyBlock.attribute();
+    }
+
     /**
      * Translates the statement and adds it 
      * to the output stream.
@@ -873,6 +1004,14 @@ public class JavaStatement extends Visitor implements Translatable {
       e.checkNotNull();
     }
 
+    /**
+     * Attributes the expressions of the statement.
+     */
+    public void attribute() {
+      e.attribute();
+      s.attribute();
+    }
+
     /**
      * Translates the statement and adds it 
      * to the output stream.
@@ -903,8 +1042,13 @@ public class JavaStatement extends Visitor implements Translatable {
   public Printer translate(Printer out) {
     if (null == s)
       return out;
-    s.checkNotNull();
-    if (!parent.hasName("JavaClass")) {
+    if (!checked) {
+      s.checkNotNull();
+      checked = true;
+    }
+    if (!(parent instanceof JavaClass)) {
+      if (null != node.getLocation())
+        translateLine(out, enclosingClass, node.getLocation().line);
       for (String obj : objects) {
         out.indent().p("__rt::checkNotNull(").p(obj).pln(");");
       }
@@ -912,4 +1056,56 @@ public class JavaStatement extends Visitor implements Translatable {
     return s.translate(out);
   }
 
+
+
+  // ========================== Static Methods ======================
+
+  /**
+   * Sets whether to write <code>#line</code> directives so that
+   * compiler diagnostics, debuggers, and profilers refer to the
+   * lines of the Java source instead of the C++ output.
+   *
+   * @param enabled Whether to write line directives.
+   */
+  public static void setLineDirectives(boolean enabled) {
+    lineDirectives = enabled;
+  }
+
+  /**
+   * Writes a directive attributing the following C++ lines to
+   * the specified line of the Java file of a class.  Nothing is
+   * written unless directives are enabled and the output is at
+   * the start of a line.
+   *
+   * @param out The output stream.
+   * @param cls The class.
+   * @param line The line in the Java file.
+   *
+   * @return The output stream.
+   */
+  static Printer translateLine(Printer out, JavaClass cls, int line) {
+    if (!lineDirectives || 1 != out.column() || 0 >= line ||
+        null == cls.getFile().getSource())
+      return out;
+    String file = cls.getFile().getSource().getAbsolutePath();
+    return out.p("#line ").p(line).p(" \"").p(JavaExpression.escape(file)).pln("\"");
+  }
+
+  /**
+   * Writes a directive attributing the following lines back to
+   * the C++ file being written, once the code translated from a
+   * method or constructor ends.
+   *
+   * @param out The output stream.
+   *
+   * @return The output stream.
+   */
+  static Printer translateOutputLine(Printer out) {
+    if (!lineDirectives || !(out instanceof FilePrinter))
+      return out;
+    String file = ((FilePrinter)out).getFilename();
+    return out.p("#line ").p(out.line() + 1).p(" \"")
+      .p(JavaExpression.escape(file)).pln("\"");
+  }
+
 }
@@ -22,6 +22,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
 
 import xtc.tree.GNode;
 import xtc.tree.Node;
@@ -102,8 +103,10 @@ public class JavaType extends Visitor implements Translatable {
     classHierarchy.put("String", "Object");
   }
 
-  // Map from types to the maximum dimension of arrays of that type
-  private static Map<String, Integer> arrays = new HashMap<String, Integer>();
+  // Map from types to the maximum dimension of arrays of that type,
+  // sorted so the specializations are always written in the same order,
+  // and safe to read while packages are written in parallel
+  private static Map<String, Integer> arrays = new ConcurrentSkipListMap<String, Integer>();
 
   // The dimensions of this type
   private int dimensions;
@@ -250,6 +253,16 @@ public class JavaType extends Visitor implements Translatable {
     return s.toString();
   }
 
+  /**
+   * Gets the package named in a qualified class type.
+   *
+   * @return The package if the type is qualified;
+   * <code>null</code> otherwise.
+   */
+  public JavaPackage getPackage() {
+    return pkg;
+  }
+
   /**
    * Gets the path to the class type.
    *
@@ -349,17 +362,10 @@ public class JavaType extends Visitor implements Translatable {
       dimensions = dim;
     else
       pcp.Translator.errConsole.p("Invalid array dimensions: ").pln(dim).flush();
-    String type;
     if (null != primitiveType)
-      type = primitiveType;
+      addArray(primitiveType, dimensions);
     else
-      type = classType;
-    if (arrays.containsKey(type)) {
-      if (arrays.get(type) < dimensions)
-        arrays.put(type, dimensions);
-    } else {
-      arrays.put(type, dimensions);
-    }
+      addArray(classType, dimensions);
   }
 
   /**
@@ -457,7 +463,7 @@ public class JavaType extends Visitor implements Translatable {
       out.indent().p("Array<").p(primitives.get(primitiveType)).p(">");
       out.pln("::Array(const int32_t length)");
       out.indent().p(": __vptr(&__vtable), length(length), __data(new ");
-      out.p(primitives.get(primitiveType)).pln("[length]) {");
+      out.p(primitives.get(primitiveType)).pln("[length]), __block(0) {");
       out.indentMore().p("std::memset(__data, 0, length * sizeof(");
       out.p(primitives.get(primitiveType)).pln("));");
       out.indent().pln("}").pln();
@@ -561,6 +567,19 @@ public class JavaType extends Visitor implements Translatable {
     classHierarchy.put(type, parent);
   }
 
+  /**
+   * Records the arrays of a type, keeping the maximum
+   * dimensions for each type.
+   *
+   * @param type The type of the elements.
+   * @param dimensions The dimensions.
+   */
+  public static synchronized void addArray(String type, int dimensions) {
+    Integer dim = arrays.get(type);
+    if (null == dim || dim < dimensions)
+      arrays.put(type, dimensions);
+  }
+
   /**
    * Gets the mapping of array types to maximum dimensions.
    *
@@ -0,0 +1,330 @@
+/*
+ * pcp - The Producer of C++ Programs
+ * Copyright (C) 2011 Nabil Hassein, Thomas Huston, Mike Morreale, Marta Wilgan
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package pcp.translator;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import xtc.lang.JavaPrinter;
+
+import xtc.tree.GNode;
+import xtc.tree.Node;
+import xtc.tree.Printer;
+
+/**
+ * The interface summary of a package, which lets other packages
+ * be translated without its sources.  A summary holds each file
+ * of the package as Java source with the method and constructor
+ * bodies, the field initializers, and the initializer blocks
+ * removed, so it is parsed and resolved like the sources but
+ * quickly.  Comments list the hash of each source file, which is
+ * checked against the current source, the superclass, the mangled
+ * names of the constructors and methods, and the vtable slots of
+ * each class, which are checked against the classes resolved from
+ * the summary, and the array types the translated code uses, which
+ * are needed to write each array specialization exactly once.
+ *
+ * @author Nabil Hassein
+ * @author Thomas Huston
+ * @author Mike Morreale
+ * @author Marta Wilgan
+ *
+ * @version 2.1.1
+ */
+public final class PackageSummary {
+
+  // The comments starting a file, the hash of its source, a class,
+  // its vtable, and an array type
+  private static final String FILE = "//# ";
+  private static final String SOURCE = "// source ";
+  private static final String CLASS = "// class ";
+  private static final String VTABLE = "//   vtable ";
+  private static final String ARRAY = "// array ";
+
+  // The text of each file by name
+  private final Map<String, String> files = new LinkedHashMap<String, String>();
+
+  // The hash of the source of each file by name
+  private final Map<String, String> hashes = new HashMap<String, String>();
+
+  // The vtable slots of each class by simple name
+  private final Map<String, String> vtables = new HashMap<String, String>();
+
+  // The maximum dimensions of the array types used
+  private final Map<String, Integer> arrays = new HashMap<String, Integer>();
+
+
+  // =========================== Constructors =======================
+
+  /**
+   * Reads a summary.
+   *
+   * @param file The summary file.
+   *
+   * @throws IOException Signals an I/O error.
+   */
+  public PackageSummary(File file) throws IOException {
+    String name = null, cls = null;
+    StringBuilder text = null;
+    for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+      if (line.startsWith(FILE)) {
+        if (null != name)
+          files.put(name, text.toString());
+        name = line.substring(FILE.length());
+        text = new StringBuilder();
+        continue;
+      }
+      if (line.startsWith(ARRAY)) {
+        String[] parts = line.substring(ARRAY.length()).split(" ");
+        arrays.put(parts[0], Integer.valueOf(parts[1]));
+      } else if (line.startsWith(SOURCE)) {
+        hashes.put(name, line.substring(SOURCE.length()));
+      } else if (line.startsWith(CLASS)) {
+        cls = line.substring(CLASS.length()).split(" ")[0];
+      } else if (line.startsWith(VTABLE)) {
+        vtables.put(cls, line.substring(VTABLE.length()));
+      }
+      if (null != text)
+        text.append(line).append('\n');
+    }
+    if (null != name)
+      files.put(name, text.toString());
+  }
+
+
+  // ============================ Get Methods =======================
+
+  /**
+   * Gets the Java source of each file in the package.
+   *
+   * @return The text of each file by file name.
+   */
+  public Map<String, String> getFiles() {
+    return files;
+  }
+
+  /**
+   * Gets the maximum dimensions of the array types the
+   * translated code used when the summary was written.
+   *
+   * @return The dimensions by element type.
+   */
+  public Map<String, Integer> getArrayDimensions() {
+    return arrays;
+  }
+
+
+  // ========================== Check Methods =======================
+
+  /**
+   * Checks that the sources of a package resolved from the
+   * summary are those it was written from, and that its classes
+   * have the vtable slots it lists.  Reports the files changed
+   * or removed since, whose classes the summary then describes
+   * as they were, and the classes whose slots differ, as the
+   * summary was then written by another version of the
+   * translator.
+   *
+   * @param pkg The package.
+   *
+   * @return <code>True</code> if all sources and slots match;
+   * <code>false</code> otherwise.
+   */
+  public boolean check(JavaPackage pkg) {
+    boolean ok = true;
+    for (JavaFile f : pkg.getFiles()) {
+      File source = f.getSource();
+      String hash = null;
+      try {
+        if (source.isFile())
+          hash = hash(source);
+      } catch (IOException e) {
+        // Reported as out of date below
+      }
+      if (null == hash || !hash.equals(hashes.get(source.getName()))) {
+        pcp.Translator.errConsole.p("Summary out of date, source ")
+          .p(null == hash ? "removed: " : "changed: ").pln(source.getPath()).flush();
+        ok = false;
+      }
+      for (JavaClass cls : f.getClasses()) {
+        if (!getSlots(cls).equals(vtables.get(cls.getName()))) {
+          pcp.Translator.errConsole.p("Summary out of date: ")
+            .pln(pkg.getQualifiedName(cls.getName())).flush();
+          ok = false;
+        }
+      }
+    }
+    return ok;
+  }
+
+
+  // ========================== Static Methods ======================
+
+  /**
+   * Writes the summary of a package.
+   *
+   * @param pkg The package.
+   * @param stubs The stripped AST of each file.
+   * @param out The output stream.
+   *
+   * @return The output stream.
+   *
+   * @throws IOException Signals an I/O error.
+   */
+  public static Printer write(JavaPackage pkg, Map<JavaFile, GNode> stubs, Printer out)
+    throws IOException {
+    out.p("// Interface summary of package ").pln(pkg.getPackagename()).pln();
+    Map<String, Integer> arrays =
+      new TreeMap<String, Integer>(JavaType.getArrayDimensions());
+    for (Map.Entry<String, Integer> e : arrays.entrySet())
+      out.p(ARRAY).p(e.getKey()).p(" ").pln(e.getValue());
+    for (JavaFile f : pkg.getFiles()) {
+      out.pln().p(FILE).pln(f.getSource().getName());
+      out.p(SOURCE).pln(hash(f.getSource()));
+      for (JavaClass cls : f.getClasses()) {
+        out.p(CLASS).p(cls.getName());
+        if (cls.hasParent()) {
+          JavaClass parent = cls.getParent();
+          out.p(" extends ")
+            .p(parent.getFile().getPackage().getQualifiedName(parent.getName()));
+        }
+        out.pln();
+        for (JavaConstructor c : cls.getConstructors())
+          out.p("//   constructor ").pln(c.getMangledName());
+        for (JavaMethod m : cls.getMethods())
+          out.p("//   method ").pln(m.getName());
+        out.p(VTABLE).pln(getSlots(cls));
+      }
+      new JavaPrinter(out).dispatch(stubs.get(f));
+    }
+    return out;
+  }
+
+  /**
+   * Gets the hash of a source file.
+   *
+   * @param file The file.
+   *
+   * @return The SHA-256 hash of its contents, in hexadecimal.
+   *
+   * @throws IOException Signals an I/O error.
+   */
+  private static String hash(File file) throws IOException {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IOException(e);
+    }
+    StringBuilder s = new StringBuilder();
+    for (byte b : digest.digest(Files.readAllBytes(file.toPath())))
+      s.append(String.format("%02x", b & 0xff));
+    return s.toString();
+  }
+
+  /**
+   * Gets the vtable slots of a class.
+   *
+   * @param cls The class.
+   *
+   * @return The mangled names of the slots, in order.
+   */
+  private static String getSlots(JavaClass cls) {
+    StringBuilder s = new StringBuilder();
+    for (String name : cls.getVTable().getNames()) {
+      if (0 < s.length())
+        s.append(' ');
+      s.append(name);
+    }
+    return s.toString();
+  }
+
+  /**
+   * Copies the AST of a compilation unit without the code,
+   * keeping only the declarations.
+   *
+   * @param n The compilation unit.
+   *
+   * @return The stripped copy.
+   */
+  public static GNode strip(GNode n) {
+    GNode copy = GNode.create(n.getName(), n.size());
+    for (Object o : n) {
+      if (o instanceof Node && ((Node)o).hasName("ClassDeclaration"))
+        copy.add(stripClass((GNode)o));
+      else
+        copy.add(o);
+    }
+    return copy;
+  }
+
+  /**
+   * Copies a class declaration without the code.
+   *
+   * @param n The class declaration.
+   *
+   * @return The stripped copy.
+   */
+  private static GNode stripClass(GNode n) {
+    GNode body = n.getGeneric(5);
+    GNode members = GNode.create(body.getName(), body.size());
+    for (Object o : body) {
+      if (!(o instanceof Node)) {
+        members.add(o);
+        continue;
+      }
+      GNode m = (GNode)o;
+      if (m.hasName("ClassDeclaration")) {
+        members.add(stripClass(m));
+      } else if (m.hasName("MethodDeclaration") || m.hasName("ConstructorDeclaration")) {
+        GNode decl = GNode.create(m);
+        int last = decl.size() - 1;
+        if (null != decl.get(last))
+          decl.set(last, GNode.create("Block", false));
+        members.add(decl);
+      } else if (m.hasName("FieldDeclaration")) {
+        GNode declarators = GNode.create("Declarators", m.getGeneric(2).size());
+        for (Object d : m.getGeneric(2)) {
+          GNode declarator = GNode.create((GNode)d);
+          declarator.set(2, null);
+          declarators.add(declarator);
+        }
+        GNode decl = GNode.create(m);
+        decl.set(2, declarators);
+        members.add(decl);
+      } else if (!m.hasName("BlockDeclaration")) {
+        members.add(m);
+      }
+    }
+    GNode copy = GNode.create(n);
+    copy.set(5, members);
+    return copy;
+  }
+
+}
@@ -0,0 +1,351 @@
+/*
+ * pcp - The Producer of C++ Programs
+ * Copyright (C) 2011 Nabil Hassein, Thomas Huston, Mike Morreale, Marta Wilgan
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package pcp.translator;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * A rapid type analysis finding the classes and methods reachable
+ * from the main method.  Starting from main, the analysis follows
+ * static and constructor calls directly, and a virtual call to every
+ * override in the instantiated classes below the class declaring the
+ * method.  A class is kept once reachable code instantiates it, uses
+ * its static state or members, or names it in a cast, and so are
+ * its superclasses.  The code of each file is attributed the first
+ * time the analysis reaches it, so unreachable files are never
+ * attributed.  Afterwards the classes and methods not reached are
+ * marked, and are left out of the output.
+ *
+ * @author Nabil Hassein
+ * @author Thomas Huston
+ * @author Mike Morreale
+ * @author Marta Wilgan
+ *
+ * @version 2.1.1
+ */
+public final class Reachability {
+
+  // The mangled name of the main method
+  private static final String MAIN = "main$array1_String";
+
+  // Whether attribution records what the code uses
+  private static boolean recording;
+
+  // The reachable methods and constructors, the kept classes, and
+  // the instantiated classes
+  private final Set<JavaMethod> methods = new LinkedHashSet<JavaMethod>();
+  private final Set<JavaClass> classes = new LinkedHashSet<JavaClass>();
+  private final Set<JavaClass> instances = new LinkedHashSet<JavaClass>();
+
+  // The methods called virtually from reachable code
+  private final Set<JavaMethod> dispatches = new LinkedHashSet<JavaMethod>();
+
+  // The files already attributed
+  private final Set<JavaFile> files = new LinkedHashSet<JavaFile>();
+
+  // The uses of the reached code not yet followed
+  private final Deque<Uses> pending = new ArrayDeque<Uses>();
+
+
+  // ========================== Nested Classes ======================
+
+  /**
+   * What the code of a method, a constructor, or the field
+   * initializers of a class uses, as recorded when it is
+   * attributed.
+   */
+  static final class Uses {
+
+    // The methods and constructors called directly
+    final Set<JavaMethod> calls = new LinkedHashSet<JavaMethod>();
+
+    // The methods called through the vtable
+    final Set<JavaMethod> dispatches = new LinkedHashSet<JavaMethod>();
+
+    // The classes instantiated
+    final Set<JavaClass> instances = new LinkedHashSet<JavaClass>();
+
+    // The other classes whose declarations the code needs
+    final Set<JavaClass> classes = new LinkedHashSet<JavaClass>();
+
+    /**
+     * Records a direct call.
+     *
+     * @param m The method or constructor, or <code>null</code>.
+     */
+    void addCall(JavaMethod m) {
+      if (null != m)
+        calls.add(m);
+    }
+
+    /**
+     * Records a call through the vtable.
+     *
+     * @param m The method, or <code>null</code>.
+     */
+    void addDispatch(JavaMethod m) {
+      if (null != m)
+        dispatches.add(m);
+    }
+
+    /**
+     * Records an instantiation.
+     *
+     * @param cls The class, or <code>null</code>.
+     */
+    void addInstance(JavaClass cls) {
+      if (null != cls)
+        instances.add(cls);
+    }
+
+    /**
+     * Records a needed class.
+     *
+     * @param cls The class, or <code>null</code>.
+     */
+    void addClass(JavaClass cls) {
+      if (null != cls)
+        classes.add(cls);
+    }
+
+    /**
+     * Records the class a type refers to, or the class of
+     * the elements if it is an array.
+     *
+     * @param file The file the type is written in.
+     * @param type The type, or <code>null</code>.
+     */
+    void addClass(JavaFile file, JavaType type) {
+      addClass(getJavaClass(file, type));
+    }
+
+  }
+
+
+  // ========================== Static Methods ======================
+
+  /**
+   * Sets whether attribution records what each method and
+   * class uses, which the analysis needs.
+   *
+   * @param enabled Whether to record uses.
+   */
+  public static void setRecording(boolean enabled) {
+    recording = enabled;
+  }
+
+  /**
+   * Gets the uses to record into for code in the specified
+   * method or constructor, or in the field initializers of
+   * the specified class outside of methods.
+   *
+   * @param method The method or <code>null</code>.
+   * @param cls The class.
+   *
+   * @return The uses or <code>null</code> if uses are not
+   * being recorded.
+   */
+  static Uses getUses(JavaMethod method, JavaClass cls) {
+    if (!recording)
+      return null;
+    return null != method ? method.getUses() : cls.getUses();
+  }
+
+
+  // ========================== Analysis Methods ====================
+
+  /**
+   * Finds the code reachable from the main method of the
+   * specified file and marks the rest of the program as
+   * unreachable.
+   *
+   * @param main The main file.
+   */
+  public void analyze(JavaFile main) {
+    JavaClass cls = main.getPublicClass();
+    keep(cls);
+    reach(cls.getMethod(MAIN, true));
+
+    while (!pending.isEmpty()) {
+      Uses uses = pending.poll();
+      for (JavaMethod m : uses.calls)
+        reach(m);
+      for (JavaClass c : uses.classes)
+        keep(c);
+      for (JavaClass c : uses.instances)
+        instantiate(c);
+      for (JavaMethod m : uses.dispatches)
+        dispatch(m);
+    }
+
+    for (String key : JavaPackage.getJavaPackageList()) {
+      for (JavaFile f : JavaPackage.getJavaPackage(key).getFiles()) {
+        for (JavaClass c : f.getClasses()) {
+          c.setReachable(classes.contains(c));
+          for (JavaConstructor con : c.getConstructors())
+            con.setReachable(methods.contains(con));
+          for (JavaMethod m : c.getMethods())
+            m.setReachable(methods.contains(m));
+        }
+      }
+    }
+
+    // The uses are not needed once the analysis is done
+    recording = false;
+  }
+
+  /**
+   * Marks a method or constructor as reachable, along with
+   * its class and the classes of its parameters and result,
+   * which calls pass by value.  A constructor also reaches the
+   * constructor without parameters of the superclass, which it
+   * calls unless it calls another.
+   *
+   * @param m The method or constructor, or <code>null</code>.
+   */
+  private void reach(JavaMethod m) {
+    if (null == m || !methods.add(m))
+      return;
+    JavaClass cls = m.getClassFrom();
+    keep(cls);
+    for (JavaType type : m.getParameters().values())
+      keep(getJavaClass(cls.getFile(), type));
+    keep(getJavaClass(cls.getFile(), m.getReturnType()));
+    if (!m.isMethod())
+      reachDefault(cls.getParent());
+    attribute(cls.getFile());
+    pending.add(m.getUses());
+  }
+
+  /**
+   * Reaches the constructor without parameters of a class
+   * if it is written out.
+   *
+   * @param cls The class, or <code>null</code>.
+   */
+  private void reachDefault(JavaClass cls) {
+    if (null != cls)
+      reach(cls.getConstructor(cls.getName() + "$void", true));
+  }
+
+  /**
+   * Keeps a class and its superclasses, along with the code
+   * initializing their fields.  A class without constructors
+   * gets a default one, which calls the constructor without
+   * parameters of the superclass.
+   *
+   * @param cls The class, or <code>null</code>.
+   */
+  private void keep(JavaClass cls) {
+    if (null == cls || !classes.add(cls))
+      return;
+    keep(cls.getParent());
+    if (cls.getConstructors().isEmpty())
+      reachDefault(cls.getParent());
+    attribute(cls.getFile());
+    pending.add(cls.getUses());
+  }
+
+  /**
+   * Records an instantiated class and reaches the methods it
+   * overrides for the virtual calls seen so far, as well as
+   * its overrides of the methods of <code>Object</code>,
+   * which the runtime calls.
+   *
+   * @param cls The class, or <code>null</code>.
+   */
+  private void instantiate(JavaClass cls) {
+    if (null == cls || !instances.add(cls))
+      return;
+    keep(cls);
+    VTable vtable = cls.getVTable();
+    reach(vtable.get(VTable.HASH_CODE));
+    reach(vtable.get(VTable.EQUALS));
+    reach(vtable.get(VTable.TO_STRING));
+    for (JavaMethod m : dispatches) {
+      if (isSubclass(cls, m.getClassFrom()))
+        reach(vtable.get(m.getName()));
+    }
+  }
+
+  /**
+   * Records a virtual call and reaches the method it
+   * dispatches to in each instantiated class.
+   *
+   * @param m The method.
+   */
+  private void dispatch(JavaMethod m) {
+    if (!dispatches.add(m))
+      return;
+    for (JavaClass cls : instances) {
+      if (isSubclass(cls, m.getClassFrom()))
+        reach(cls.getVTable().get(m.getName()));
+    }
+  }
+
+  /**
+   * Attributes the code of a file the first time it is
+   * reached, recording what its methods and classes use.
+   *
+   * @param file The file.
+   */
+  private void attribute(JavaFile file) {
+    if (files.add(file))
+      file.attribute();
+  }
+
+  /**
+   * Gets the class a type refers to, or the class of the
+   * elements if it is an array.
+   *
+   * @param file The file the type is written in.
+   * @param type The type, or <code>null</code>.
+   *
+   * @return The class or <code>null</code> if the type is
+   * not a translated class.
+   */
+  private static JavaClass getJavaClass(JavaFile file, JavaType type) {
+    if (null == type || null == type.getClassType() || type.isPrimitive())
+      return null;
+    if (null != type.getPackage())
+      return JavaClass.getJavaClass(type.getPackage().getQualifiedName(type.getClassType()));
+    return file.getJavaClass(type.getClassType());
+  }
+
+  /**
+   * Checks if a class is the specified class or one
+   * of its subclasses.
+   *
+   * @param cls The class.
+   * @param parent The possible superclass.
+   *
+   * @return <code>True</code> if it is;
+   * <code>false</code> otherwise.
+   */
+  private static boolean isSubclass(JavaClass cls, JavaClass parent) {
+    for (JavaClass c = cls; null != c; c = c.getParent()) {
+      if (c == parent)
+        return true;
+    }
+    return false;
+  }
+
+}
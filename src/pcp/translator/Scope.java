@@ -17,11 +17,10 @@
  */
 package pcp.translator;
 
-import java.util.Map;
-
 /**
  * An interface for classes that maintain a mapping
- * of variables within their scope.
+ * of variables within their scope.  Variables are
+ * identified by their interned {@link Symbol}.
  *
  * @author Nabil Hassein
  * @author Thomas Huston
@@ -35,10 +34,25 @@ public interface Scope {
   /**
    * Adds a variable to the scope.
    *
-   * @param name The name of the variable.
+   * @param symbol The symbol of the variable.
    * @param type The type of the variable.
    */
-  public void addVariable(String name, JavaType type);
+  public void addVariable(int symbol, JavaType type);
+
+  /**
+   * Gets the class enclosing the scope.
+   *
+   * @return The class.
+   */
+  public JavaClass getEnclosingClass();
+
+  /**
+   * Gets the method or constructor enclosing the scope.
+   *
+   * @return The method if the scope is within one;
+   * <code>null</code> otherwise.
+   */
+  public JavaMethod getEnclosingMethod();
 
   /**
    * Gets the parent scope.
@@ -50,22 +64,22 @@ public interface Scope {
   /**
    * Gets the scope in which the specified variable is declared.
    *
-   * @param name The name of the variable.
+   * @param symbol The symbol of the variable.
    *
    * @return The scope of the variable if it exists;
    * <code>null</code> otherwise.
    */
-  public Scope getVariableScope(String name);
+  public Scope getVariableScope(int symbol);
   
   /**
    * Gets the type of the specified variable.
    *
-   * @param name The name of the variable.
+   * @param symbol The symbol of the variable.
    *
    * @return The type if the variable exists;
    * <code>null</code> otherwise.
    */
-  public JavaType getVariableType(String name);
+  public JavaType getVariableType(int symbol);
   
   /**
    * Checks if the current scope is of the specified type.
@@ -80,17 +94,21 @@ public interface Scope {
   /**
    * Checks if a variable is currently in scope.
    *
+   * @param symbol The symbol of the variable.
+   *
    * @return <code>True</code> if the variable is in scope;
    * <code>false</code> otherwise.
    */
-  public boolean isInScope(String name);
+  public boolean isInScope(int symbol);
   
   /**
    * Checks if the specified variable is static.
    *
+   * @param symbol The symbol of the variable.
+   *
    * @return <code>True</code> if the variable is static;
    * <code>false</code> otherwise.
    */
-  public boolean isVariableStatic(String name);
+  public boolean isVariableStatic(int symbol);
 
 }
@@ -0,0 +1,182 @@
+/*
+ * pcp - The Producer of C++ Programs
+ * Copyright (C) 2011 Nabil Hassein, Thomas Huston, Mike Morreale, Marta Wilgan
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package pcp.translator;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import xtc.tree.GNode;
+
+/**
+ * An index from class names to the source files declaring
+ * them, used to parse only the files a program refers to.  The
+ * index of a directory is first built from the file names
+ * alone, since a public class lives in the file of the same
+ * name.  Classes declared next to another class in its file
+ * are only found by scanning the text of the files, which is
+ * done once per directory and only when a type name is not
+ * found otherwise.
+ *
+ * @author Nabil Hassein
+ * @author Thomas Huston
+ * @author Mike Morreale
+ * @author Marta Wilgan
+ *
+ * @version 2.1.1
+ */
+public final class SourceIndex {
+
+  // The classes of java.lang the runtime provides, which are never
+  // looked for in the text of the files
+  private static final Set<String> RUNTIME = new HashSet<String>(Arrays.asList(
+    "Object", "Class", "String", "System", "Math", "Boolean", "Byte",
+    "Character", "Short", "Integer", "Long", "Float", "Double", "Exception",
+    "RuntimeException", "ArithmeticException", "ArrayIndexOutOfBoundsException",
+    "ArrayStoreException", "ClassCastException", "IllegalArgumentException",
+    "NegativeArraySizeException", "NullPointerException"));
+
+  // The declarations of classes in the text of a file
+  private static final Pattern DECLARATION =
+    Pattern.compile("\\b(?:class|interface)\\s+([A-Za-z_][A-Za-z_0-9]*)");
+
+  // The comments and literals in the text of a file
+  private static final Pattern SKIPPED =
+    Pattern.compile("//[^\\n]*|/\\*(?s:.*?)\\*/|\"(?:\\\\.|[^\"\\\\])*\"|'(?:\\\\.|[^'\\\\])*'");
+
+  // The index of each directory, from class names to files
+  private final Map<File, Map<String, File>> directories =
+    new HashMap<File, Map<String, File>>();
+
+  // The directories whose files have been scanned
+  private final Set<File> scanned = new HashSet<File>();
+
+
+  // ============================ Get Methods =======================
+
+  /**
+   * Gets the file declaring a class in the specified directory.
+   *
+   * @param dir The directory.
+   * @param name The simple name of the class.
+   * @param scan Whether to scan the text of the files if
+   * no file has the name of the class.
+   *
+   * @return The file or <code>null</code> if the class is not
+   * found.
+   */
+  public File find(File dir, String name, boolean scan) {
+    Map<String, File> index = getIndex(dir);
+    File file = index.get(name);
+    if (null != file || !scan || RUNTIME.contains(name) || !scanned.add(dir))
+      return file;
+
+    // Look for the classes declared next to other classes
+    for (File f : new TreeSet<File>(index.values())) {
+      try {
+        String text = new String(Files.readAllBytes(f.toPath()), StandardCharsets.UTF_8);
+        Matcher m = DECLARATION.matcher(SKIPPED.matcher(text).replaceAll(" "));
+        while (m.find()) {
+          if (!index.containsKey(m.group(1)))
+            index.put(m.group(1), f);
+        }
+      } catch (IOException e) {
+        pcp.Translator.errConsole.p("Error reading file: ").pln(f.getPath()).flush();
+      }
+    }
+    return index.get(name);
+  }
+
+  /**
+   * Gets the index of a directory, listing its Java files
+   * the first time.
+   *
+   * @param dir The directory.
+   *
+   * @return The index from class names to files.
+   */
+  private Map<String, File> getIndex(File dir) {
+    Map<String, File> index = directories.get(dir);
+    if (null == index) {
+      index = new HashMap<String, File>();
+      String[] names = dir.list();
+      if (null != names) {
+        for (String name : names) {
+          if (name.endsWith(".java"))
+            index.put(name.substring(0, name.length() - 5), new File(dir, name));
+        }
+      }
+      directories.put(dir, index);
+    }
+    return index;
+  }
+
+
+  // ========================== Static Methods ======================
+
+  /**
+   * Collects the names a file may refer to classes by.  Names
+   * in type positions are certainly types and are mapped to
+   * <code>true</code>.  Other identifiers may be variables, and
+   * only those starting with an upper case letter are mapped
+   * to <code>true</code>, as class names conventionally do.
+   * Qualified names are collected as written and by their first
+   * part, which may be a class with nested classes.
+   *
+   * @param n The AST node.
+   * @param names The names collected so far.
+   */
+  public static void getReferences(GNode n, Map<String, Boolean> names) {
+    if (n.hasName("PackageDeclaration") || n.hasName("ImportDeclaration"))
+      return;
+    if (n.hasName("QualifiedIdentifier")) {
+      StringBuilder s = new StringBuilder();
+      for (int i = 0; i < n.size(); i++) {
+        if (0 < i)
+          s.append('.');
+        s.append(n.getString(i));
+      }
+      names.put(n.getString(0), Boolean.TRUE);
+      names.put(s.toString(), Boolean.TRUE);
+      return;
+    }
+    if (n.hasName("PrimaryIdentifier")) {
+      String name = n.getString(0);
+      if (!Boolean.TRUE.equals(names.get(name)))
+        names.put(name, Character.isUpperCase(name.charAt(0)));
+      return;
+    }
+    for (Object o : n) {
+      if (o instanceof GNode)
+        getReferences((GNode)o, names);
+    }
+  }
+
+}
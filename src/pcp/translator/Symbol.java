@@ -0,0 +1,99 @@
+/*
+ * pcp - The Producer of C++ Programs
+ * Copyright (C) 2011 Nabil Hassein, Thomas Huston, Mike Morreale, Marta Wilgan
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package pcp.translator;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Interned symbols for variable names, so that scopes can
+ * look variables up by an integer ID instead of building
+ * and hashing the mangled name on every lookup.
+ *
+ * @author Nabil Hassein
+ * @author Thomas Huston
+ * @author Mike Morreale
+ * @author Marta Wilgan
+ *
+ * @version 2.1.1
+ */
+public final class Symbol {
+
+  // A map from names to their symbols
+  private static Map<String, Integer> symbols = new HashMap<String, Integer>();
+
+  // The names of the symbols, indexed by symbol
+  private static List<String> names = new ArrayList<String>();
+
+
+  // =========================== Constructors =======================
+
+  /**
+   * Symbols are only handed out by the static methods.
+   */
+  private Symbol() {
+    // Nothing to do
+  }
+
+
+  // ========================== Static Methods ======================
+
+  /**
+   * Gets the symbol for the specified name, creating it
+   * if it doesn't exist yet.
+   *
+   * @param name The name.
+   *
+   * @return The symbol.
+   */
+  public static synchronized int intern(String name) {
+    Integer symbol = symbols.get(name);
+    if (null == symbol) {
+      symbol = names.size();
+      symbols.put(name, symbol);
+      names.add(name);
+    }
+    return symbol;
+  }
+
+  /**
+   * Gets the symbol for the mangled name of the specified
+   * variable.
+   *
+   * @param name The name of the variable.
+   *
+   * @return The symbol.
+   */
+  public static int variable(String name) {
+    return intern("$" + name);
+  }
+
+  /**
+   * Gets the name of the specified symbol.
+   *
+   * @param symbol The symbol.
+   *
+   * @return The name.
+   */
+  public static synchronized String getName(int symbol) {
+    return names.get(symbol);
+  }
+
+}
@@ -0,0 +1,151 @@
+/*
+ * pcp - The Producer of C++ Programs
+ * Copyright (C) 2011 Nabil Hassein, Thomas Huston, Mike Morreale, Marta Wilgan
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package pcp.translator;
+
+/**
+ * A table from symbols to the types of the variables declared
+ * in a scope, using open addressing with linear probing.  The
+ * arrays are only allocated once a variable is added, since
+ * most blocks declare none.
+ *
+ * @author Nabil Hassein
+ * @author Thomas Huston
+ * @author Mike Morreale
+ * @author Marta Wilgan
+ *
+ * @version 2.1.1
+ */
+public class SymbolTable {
+
+  // The capacity of the arrays once a variable is added
+  private static final int INITIAL_CAPACITY = 8;
+
+  // The symbols plus one, so that zero marks an empty slot
+  private int[] keys;
+
+  // The number of variables in the table
+  private int size;
+
+  // The types of the variables, in the same slots as the symbols
+  private JavaType[] types;
+
+
+  // ============================ Get Methods =======================
+
+  /**
+   * Checks if the specified variable is in the table.
+   *
+   * @param symbol The symbol of the variable.
+   *
+   * @return <code>True</code> if the variable is in the table;
+   * <code>false</code> otherwise.
+   */
+  public boolean contains(int symbol) {
+    return null != keys && 0 != keys[slot(symbol)];
+  }
+
+  /**
+   * Gets the type of the specified variable.
+   *
+   * @param symbol The symbol of the variable.
+   *
+   * @return The type if the variable is in the table;
+   * <code>null</code> otherwise.
+   */
+  public JavaType get(int symbol) {
+    if (null == keys)
+      return null;
+    return types[slot(symbol)];
+  }
+
+  /**
+   * Gets the number of variables in the table.
+   *
+   * @return The number of variables.
+   */
+  public int size() {
+    return size;
+  }
+
+
+  // ============================ Set Methods =======================
+
+  /**
+   * Adds a variable to the table, replacing the type of
+   * a variable with the same symbol.
+   *
+   * @param symbol The symbol of the variable.
+   * @param type The type of the variable.
+   */
+  public void put(int symbol, JavaType type) {
+    if (null == keys) {
+      keys = new int[INITIAL_CAPACITY];
+      types = new JavaType[INITIAL_CAPACITY];
+    }
+    int i = slot(symbol);
+    if (0 == keys[i]) {
+      // Keep the table at most half full
+      if (2 * (size + 1) > keys.length) {
+        resize();
+        i = slot(symbol);
+      }
+      keys[i] = symbol + 1;
+      size++;
+    }
+    types[i] = type;
+  }
+
+
+  // =========================== Other Methods ======================
+
+  /**
+   * Finds the slot holding the specified symbol, or the
+   * empty slot where it would be added.
+   *
+   * @param symbol The symbol.
+   *
+   * @return The index of the slot.
+   */
+  private int slot(int symbol) {
+    int mask = keys.length - 1;
+    int h = symbol * 0x9E3779B9;
+    int i = (h ^ (h >>> 16)) & mask;
+    while (0 != keys[i] && symbol + 1 != keys[i]) {
+      i = (i + 1) & mask;
+    }
+    return i;
+  }
+
+  /**
+   * Doubles the capacity of the table.
+   */
+  private void resize() {
+    int[] oldKeys = keys;
+    JavaType[] oldTypes = types;
+    keys = new int[2 * oldKeys.length];
+    types = new JavaType[2 * oldKeys.length];
+    for (int j = 0; j < oldKeys.length; j++) {
+      if (0 != oldKeys[j]) {
+        int i = slot(oldKeys[j] - 1);
+        keys[i] = oldKeys[j];
+        types[i] = oldTypes[j];
+      }
+    }
+  }
+
+}
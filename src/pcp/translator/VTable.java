@@ -0,0 +1,202 @@
+/*
+ * pcp - The Producer of C++ Programs
+ * Copyright (C) 2011 Nabil Hassein, Thomas Huston, Mike Morreale, Marta Wilgan
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package pcp.translator;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The immutable vtable layout of a class.  Each method name
+ * gets a slot number once, in the class that first declares
+ * it, and subclasses keep the slots of their parent.  A vtable
+ * only stores the slots its class adds and the parent slots it
+ * overrides, and shares the rest with the vtable of the parent.
+ * The first slots are reserved for the methods every class
+ * inherits from <code>java.lang.Object</code>; they hold
+ * <code>null</code> until a class overrides them.
+ *
+ * @author Nabil Hassein
+ * @author Thomas Huston
+ * @author Mike Morreale
+ * @author Marta Wilgan
+ *
+ * @version 2.1.1
+ */
+public final class VTable {
+
+  // The slots reserved for the methods of java.lang.Object; slot 2
+  // holds getClass, which is final and never overridden
+  public static final int HASH_CODE = 0;
+  public static final int EQUALS = 1;
+  public static final int TO_STRING = 3;
+  public static final int RESERVED = 4;
+
+  // The vtable of classes without a superclass
+  private static final VTable ROOT = new VTable();
+
+  // The vtable of the parent
+  private VTable parent;
+
+  // The number of slots in the parent and in this vtable
+  private int base, size;
+
+  // The slots added by this vtable, by name and by slot
+  private Map<String, Integer> slots;
+  private List<JavaMethod> added;
+
+  // The parent slots overridden by this vtable
+  private Map<Integer, JavaMethod> overrides;
+
+
+  // =========================== Constructors =======================
+
+  /**
+   * Creates the root vtable with the reserved slots.
+   */
+  private VTable() {
+    slots = new HashMap<String, Integer>();
+    added = new ArrayList<JavaMethod>();
+    overrides = new HashMap<Integer, JavaMethod>();
+    for (String name : new String[] { "hashCode$void", "equals$Object",
+                                      "getClass$void", "toString$void" }) {
+      slots.put(name, size++);
+      added.add(null);
+    }
+  }
+
+  /**
+   * Creates the vtable for a class with the specified
+   * parent vtable and virtual methods.
+   *
+   * @param parent The vtable of the parent or <code>null</code>
+   * if the class has no superclass.
+   * @param methods The virtual methods of the class.
+   */
+  public VTable(VTable parent, List<JavaMethod> methods) {
+    this.parent = null == parent ? ROOT : parent;
+    base = size = this.parent.size;
+    slots = new HashMap<String, Integer>();
+    added = new ArrayList<JavaMethod>();
+    overrides = new HashMap<Integer, JavaMethod>();
+    for (JavaMethod m : methods) {
+      int slot = getSlot(m.getName());
+      if (-1 == slot) {
+        slots.put(m.getName(), size++);
+        added.add(m);
+      } else if (slot >= base) {
+        added.set(slot - base, m);
+      } else {
+        overrides.put(slot, m);
+      }
+    }
+  }
+
+
+  // ============================ Get Methods =======================
+
+  /**
+   * Gets the slot of the method with the specified name.
+   *
+   * @param name The mangled name of the method.
+   *
+   * @return The slot or -1 if the name has no slot.
+   */
+  public int getSlot(String name) {
+    for (VTable t = this; null != t; t = t.parent) {
+      Integer slot = t.slots.get(name);
+      if (null != slot)
+        return slot;
+    }
+    return -1;
+  }
+
+  /**
+   * Gets the method in the specified slot.
+   *
+   * @param slot The slot.
+   *
+   * @return The method or <code>null</code> if the slot is
+   * one of the reserved slots and is not overridden.
+   */
+  public JavaMethod get(int slot) {
+    for (VTable t = this; null != t; t = t.parent) {
+      if (slot >= t.base)
+        return t.added.get(slot - t.base);
+      JavaMethod m = t.overrides.get(slot);
+      if (null != m)
+        return m;
+    }
+    return null;
+  }
+
+  /**
+   * Gets the method with the specified name.
+   *
+   * @param name The mangled name of the method.
+   *
+   * @return The method or <code>null</code> if there is none.
+   */
+  public JavaMethod get(String name) {
+    int slot = getSlot(name);
+    return -1 == slot ? null : get(slot);
+  }
+
+  /**
+   * Gets the mangled names of all slots.
+   *
+   * @return The names indexed by slot.
+   */
+  public String[] getNames() {
+    String[] names = new String[size];
+    for (VTable t = this; null != t; t = t.parent) {
+      for (Map.Entry<String, Integer> e : t.slots.entrySet())
+        names[e.getValue()] = e.getKey();
+    }
+    return names;
+  }
+
+  /**
+   * Gets the methods of all slots, filling each slot
+   * with the nearest override along the parent chain.
+   *
+   * @return The methods indexed by slot.
+   */
+  public JavaMethod[] getMethods() {
+    JavaMethod[] methods = new JavaMethod[size];
+    boolean[] filled = new boolean[size];
+    int end = size;
+    for (VTable t = this; null != t; t = t.parent) {
+      for (Map.Entry<Integer, JavaMethod> e : t.overrides.entrySet()) {
+        int slot = e.getKey();
+        if (!filled[slot]) {
+          methods[slot] = e.getValue();
+          filled[slot] = true;
+        }
+      }
+      for (int slot = t.base; slot < end; slot++) {
+        if (!filled[slot])
+          methods[slot] = t.added.get(slot - t.base);
+      }
+      end = t.base;
+    }
+    return methods;
+  }
+
+}
@@ -0,0 +1,52 @@
+import java.util.Arrays;
+
+public class ArrayCopy {
+
+  public static void main(String[] args) {
+    int[] a = new int[10];
+    for (int i = 0; i < a.length; i++)
+      a[i] = i;
+
+    // Overlapping copies in both directions
+    System.arraycopy(a, 0, a, 2, 5);
+    System.arraycopy(a, 4, a, 3, 6);
+    for (int i = 0; i < a.length; i++)
+      System.out.print(a[i] + " ");
+    System.out.println();
+
+    double[] d = new double[6];
+    Arrays.fill(d, 1.5);
+    Arrays.fill(d, 1, 3, 0);
+    for (int i = 0; i < d.length; i++)
+      System.out.print(d[i] + " ");
+    System.out.println();
+
+    char[] c = new char[5];
+    Arrays.fill(c, 'x');
+    Arrays.fill(c, 2, 4, 'y');
+    for (int i = 0; i < c.length; i++)
+      System.out.print(c[i]);
+    System.out.println();
+
+    String[] s = new String[4];
+    Arrays.fill(s, "a");
+    Arrays.fill(s, 1, 2, "b");
+    System.arraycopy(s, 0, s, 1, 3);
+    Object[] o = new Object[5];
+    System.arraycopy(s, 0, o, 1, 4);
+    for (int i = 0; i < o.length; i++)
+      System.out.print(o[i] + " ");
+    System.out.println();
+
+    long[] big = new long[100000];
+    long[] copy = new long[100000];
+    long sum = 0;
+    for (int k = 0; k < 100; k++) {
+      Arrays.fill(big, k);
+      System.arraycopy(big, 0, copy, 0, big.length);
+      sum = sum + copy[k * 17];
+    }
+    System.out.println(sum);
+  }
+
+}
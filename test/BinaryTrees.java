@@ -0,0 +1,52 @@
+public class BinaryTrees {
+
+  public static void main(String[] args) {
+    int n = 12;
+    if (args.length > 0)
+      n = Integer.parseInt(args[0]);
+    int minDepth = 4;
+    int maxDepth = minDepth + 2 > n ? minDepth + 2 : n;
+
+    int stretchDepth = maxDepth + 1;
+    System.out.println("stretch tree of depth " + stretchDepth + "\t check: " +
+                       TreeNode.bottomUp(stretchDepth).check());
+
+    TreeNode longLived = TreeNode.bottomUp(maxDepth);
+
+    for (int depth = minDepth; depth <= maxDepth; depth += 2) {
+      int iterations = 1 << (maxDepth - depth + minDepth);
+      int check = 0;
+      for (int i = 1; i <= iterations; i++) {
+        check += TreeNode.bottomUp(depth).check();
+      }
+      System.out.println(iterations + "\t trees of depth " + depth +
+                         "\t check: " + check);
+    }
+
+    System.out.println("long lived tree of depth " + maxDepth +
+                       "\t check: " + longLived.check());
+  }
+
+}
+
+class TreeNode {
+  private TreeNode left;
+  private TreeNode right;
+
+  public TreeNode(TreeNode left, TreeNode right) {
+    this.left = left;
+    this.right = right;
+  }
+
+  public static TreeNode bottomUp(int depth) {
+    if (depth > 0)
+      return new TreeNode(bottomUp(depth - 1), bottomUp(depth - 1));
+    return new TreeNode(null, null);
+  }
+
+  public int check() {
+    if (null == left)
+      return 1;
+    return 1 + left.check() + right.check();
+  }
+}
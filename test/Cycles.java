@@ -0,0 +1,27 @@
+public class Cycles {
+
+  public static void main(String[] args) {
+    int total = 0;
+    for (int i = 0; i < 200000; i++) {
+      Node head = new Node(i);
+      Node tail = new Node(i + 1);
+      head.next = tail;
+      tail.prev = head;
+      Node self = new Node(i + 2);
+      self.next = self;
+      total = total + head.next.value + tail.prev.value + self.next.value;
+    }
+    System.out.println(total);
+  }
+
+}
+
+class Node {
+  public Node next;
+  public Node prev;
+  public int value;
+
+  public Node(int value) {
+    this.value = value;
+  }
+}
@@ -0,0 +1,77 @@
+public class Fannkuch {
+
+  public static void main(String[] args) {
+    int n = 9;
+    if (args.length > 0)
+      n = Integer.parseInt(args[0]);
+    Fannkuch f = new Fannkuch(n);
+    f.run();
+    System.out.println(f.checksum);
+    System.out.println("Pfannkuchen(" + n + ") = " + f.maxFlips);
+  }
+
+  private int n;
+  private int checksum;
+  private int maxFlips;
+
+  public Fannkuch(int n) {
+    this.n = n;
+  }
+
+  public void run() {
+    int[] perm = new int[n];
+    int[] perm1 = new int[n];
+    int[] count = new int[n];
+    for (int i = 0; i < n; i++)
+      perm1[i] = i;
+
+    int permCount = 0;
+    int r = n;
+    while (true) {
+      while (r != 1) {
+        count[r - 1] = r;
+        r--;
+      }
+
+      for (int i = 0; i < n; i++)
+        perm[i] = perm1[i];
+      int flips = 0;
+      int k = perm[0];
+      while (k != 0) {
+        int i = 0;
+        int j = k;
+        while (i < j) {
+          int t = perm[i];
+          perm[i] = perm[j];
+          perm[j] = t;
+          i++;
+          j--;
+        }
+        flips++;
+        k = perm[0];
+      }
+      if (flips > maxFlips)
+        maxFlips = flips;
+      if (permCount % 2 == 0)
+        checksum += flips;
+      else
+        checksum -= flips;
+
+      // Generate the next permutation
+      while (true) {
+        if (r == n)
+          return;
+        int perm0 = perm1[0];
+        for (int i = 0; i < r; i++)
+          perm1[i] = perm1[i + 1];
+        perm1[r] = perm0;
+        count[r]--;
+        if (count[r] > 0)
+          break;
+        r++;
+      }
+      permCount++;
+    }
+  }
+
+}
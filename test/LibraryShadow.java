@@ -0,0 +1,52 @@
+class Box {
+
+  public int value;
+
+}
+
+class Arrays {
+
+  public static void fill(Box b, int v) {
+    b.value = v + 3;
+  }
+
+}
+
+class Copier {
+
+  public int copied;
+
+  public void arraycopy(int src, int srcPos, int dest, int destPos, int length) {
+    copied = src + srcPos + dest + destPos + length;
+  }
+
+}
+
+public class LibraryShadow {
+
+  public static int copy(int n) {
+    Copier System = new Copier();
+    System.arraycopy(n, 1, n, 2, 3);
+    return System.copied;
+  }
+
+  public static void main(String[] args) {
+    // The class declared above, not java.util.Arrays
+    Box b = new Box();
+    Arrays.fill(b, 6);
+    System.out.println(b.value);
+
+    // A local named System, not java.lang.System
+    System.out.println(copy(4));
+
+    // The runtime's arraycopy
+    int[] a = new int[4];
+    for (int i = 0; i < a.length; i++)
+      a[i] = i;
+    System.arraycopy(a, 0, a, 1, 3);
+    for (int i = 0; i < a.length; i++)
+      System.out.print(a[i] + " ");
+    System.out.println();
+  }
+
+}
@@ -0,0 +1,39 @@
+public class Matrix {
+
+  public static void main(String[] args) {
+    int n = 120;
+    double[][] a = new double[n][n];
+    double[][] b = new double[n][n];
+    double[][] c = new double[n][n];
+    for (int i = 0; i < n; i++) {
+      for (int j = 0; j < n; j++) {
+        a[i][j] = i + j;
+        b[i][j] = i - j;
+      }
+    }
+    for (int i = 0; i < n; i++) {
+      for (int k = 0; k < n; k++) {
+        double x = a[i][k];
+        for (int j = 0; j < n; j++) {
+          c[i][j] = c[i][j] + x * b[k][j];
+        }
+      }
+    }
+    System.out.println(c[7][11]);
+
+    // Rows are still arrays of their own
+    int[][] m = new int[3][4];
+    int[] row = m[1];
+    row[2] = 5;
+    System.out.println(m[1][2]);
+    m[2] = new int[7];
+    m[2][6] = 9;
+    System.out.println(m.length);
+    System.out.println(m[0].length);
+    System.out.println(m[2].length);
+    System.out.println(m[2][6] + m[0][3]);
+    m = null;
+    System.out.println(row[2]);
+  }
+
+}
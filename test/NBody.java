@@ -0,0 +1,141 @@
+public class NBody {
+
+  public static void main(String[] args) {
+    int n = 100000;
+    if (args.length > 0)
+      n = Integer.parseInt(args[0]);
+    NBodySystem system = new NBodySystem();
+    System.out.println((long)(system.energy() * 1000000000.0));
+    for (int i = 0; i < n; i++)
+      system.advance(0.01);
+    System.out.println((long)(system.energy() * 1000000000.0));
+  }
+
+}
+
+class NBodySystem {
+  private Body[] bodies;
+
+  public NBodySystem() {
+    bodies = new Body[5];
+    bodies[0] = Body.sun();
+    bodies[1] = Body.jupiter();
+    bodies[2] = Body.saturn();
+    bodies[3] = Body.uranus();
+    bodies[4] = Body.neptune();
+
+    double px = 0.0;
+    double py = 0.0;
+    double pz = 0.0;
+    for (int i = 0; i < bodies.length; i++) {
+      px += bodies[i].vx * bodies[i].mass;
+      py += bodies[i].vy * bodies[i].mass;
+      pz += bodies[i].vz * bodies[i].mass;
+    }
+    bodies[0].offsetMomentum(px, py, pz);
+  }
+
+  public void advance(double dt) {
+    int length = bodies.length;
+    for (int i = 0; i < length; i++) {
+      Body a = bodies[i];
+      for (int j = i + 1; j < length; j++) {
+        Body b = bodies[j];
+        double dx = a.x - b.x;
+        double dy = a.y - b.y;
+        double dz = a.z - b.z;
+        double distance2 = dx * dx + dy * dy + dz * dz;
+        double distance = Math.sqrt(distance2);
+        double magnitude = dt / (distance2 * distance);
+
+        a.vx -= dx * b.mass * magnitude;
+        a.vy -= dy * b.mass * magnitude;
+        a.vz -= dz * b.mass * magnitude;
+
+        b.vx += dx * a.mass * magnitude;
+        b.vy += dy * a.mass * magnitude;
+        b.vz += dz * a.mass * magnitude;
+      }
+    }
+    for (int i = 0; i < length; i++) {
+      Body body = bodies[i];
+      body.x += dt * body.vx;
+      body.y += dt * body.vy;
+      body.z += dt * body.vz;
+    }
+  }
+
+  public double energy() {
+    double e = 0.0;
+    int length = bodies.length;
+    for (int i = 0; i < length; i++) {
+      Body a = bodies[i];
+      e += 0.5 * a.mass * (a.vx * a.vx + a.vy * a.vy + a.vz * a.vz);
+      for (int j = i + 1; j < length; j++) {
+        Body b = bodies[j];
+        double dx = a.x - b.x;
+        double dy = a.y - b.y;
+        double dz = a.z - b.z;
+        e -= (a.mass * b.mass) / Math.sqrt(dx * dx + dy * dy + dz * dz);
+      }
+    }
+    return e;
+  }
+}
+
+class Body {
+  public static final double PI = 3.141592653589793;
+  public static final double SOLAR_MASS = 4 * PI * PI;
+  public static final double DAYS_PER_YEAR = 365.24;
+
+  public double x, y, z, vx, vy, vz, mass;
+
+  public Body(double x, double y, double z, double vx, double vy, double vz,
+              double mass) {
+    this.x = x;
+    this.y = y;
+    this.z = z;
+    this.vx = vx * DAYS_PER_YEAR;
+    this.vy = vy * DAYS_PER_YEAR;
+    this.vz = vz * DAYS_PER_YEAR;
+    this.mass = mass * SOLAR_MASS;
+  }
+
+  public static Body jupiter() {
+    return new Body(4.84143144246472090e+00, -1.16032004402742839e+00,
+                    -1.03622044471123109e-01, 1.66007664274403694e-03,
+                    7.69901118419740425e-03, -6.90460016972063023e-05,
+                    9.54791938424326609e-04);
+  }
+
+  public static Body saturn() {
+    return new Body(8.34336671824457987e+00, 4.12479856412430479e+00,
+                    -4.03523417114321381e-01, -2.76742510726862411e-03,
+                    4.99852801234917238e-03, 2.30417297573763929e-05,
+                    2.85885980666130812e-04);
+  }
+
+  public static Body uranus() {
+    return new Body(1.28943695621391310e+01, -1.51111514016986312e+01,
+                    -2.23307578892655734e-01, 2.96460137564761618e-03,
+                    2.37847173959480950e-03, -2.96589568540237556e-05,
+                    4.36624404335156298e-05);
+  }
+
+  public static Body neptune() {
+    return new Body(1.53796971148509165e+01, -2.59193146099879641e+01,
+                    1.79258772950371181e-01, 2.68067772490389322e-03,
+                    1.62824170038242295e-03, -9.51592254519715870e-05,
+                    5.15138902046611451e-05);
+  }
+
+  public static Body sun() {
+    return new Body(0.0, 0.0, 0.0, 0.0, 0.0, 0.0, 1.0 / SOLAR_MASS);
+  }
+
+  public void offsetMomentum(double px, double py, double pz) {
+    vx = -px / SOLAR_MASS;
+    vy = -py / SOLAR_MASS;
+    vz = -pz / SOLAR_MASS;
+  }
+}
@@ -0,0 +1,28 @@
+public class Sieve {
+
+  public static void main(String[] args) {
+    int n = 1000000;
+    if (args.length > 0)
+      n = Integer.parseInt(args[0]);
+    int count = 0;
+    for (int round = 0; round < 10; round++) {
+      count = sieve(n);
+    }
+    System.out.println("primes up to " + n + ": " + count);
+  }
+
+  public static int sieve(int n) {
+    boolean[] composite = new boolean[n + 1];
+    int count = 0;
+    for (int i = 2; i <= n; i++) {
+      if (!composite[i]) {
+        count++;
+        for (int j = i + i; j <= n; j += i) {
+          composite[j] = true;
+        }
+      }
+    }
+    return count;
+  }
+
+}
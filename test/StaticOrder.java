@@ -0,0 +1,23 @@
+public class StaticOrder {
+  public static void main(String[] args) {
+    System.out.println(Limits.LIMIT);
+    System.out.println(Limits.NAME);
+  }
+}
+
+class Limits {
+  public static int LIMIT = Defaults.base() * 2;
+  public static String NAME = Defaults.NAME;
+}
+
+class Defaults {
+  public static String NAME = Defaults.name("default");
+
+  public static int base() {
+    return 21;
+  }
+
+  public static String name(String s) {
+    return s;
+  }
+}
@@ -0,0 +1,28 @@
+public class StringKeys {
+
+  public static void main(String[] args) {
+    String[] keys = new String[64];
+    for (int i = 0; i < keys.length; i++)
+      keys[i] = "a somewhat longer string key number " + i;
+    String[] probes = new String[64];
+    for (int i = 0; i < probes.length; i++)
+      probes[i] = "a somewhat longer string key number " + (i * 7 % 64);
+
+    int hash = 0;
+    int matches = 0;
+    for (int round = 0; round < 2000; round++) {
+      for (int i = 0; i < probes.length; i++) {
+        int h = probes[i].hashCode();
+        for (int j = 0; j < keys.length; j++) {
+          if (keys[j].hashCode() == h && keys[j].equals(probes[i]))
+            matches++;
+        }
+        hash = hash + h;
+      }
+    }
+    System.out.println(hash);
+    System.out.println(matches);
+    System.out.println("short".hashCode() + " " + "".hashCode() + " " + "short".equals("shirt"));
+  }
+
+}
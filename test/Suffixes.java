@@ -0,0 +1,48 @@
+class Node {
+
+  int value;
+
+  public Node(int value) {
+    this.value = value;
+  }
+
+  public int next() {
+    return value + 1;
+  }
+
+  public static int scale(int x) {
+    return 2 * x;
+  }
+
+}
+
+class TreeNode {
+
+  int total;
+
+  public TreeNode(String label, int total) {
+    this.total = total;
+  }
+
+  public String next() {
+    return "total " + total;
+  }
+
+  public static String scale(int x) {
+    return "scaled " + x;
+  }
+
+}
+
+public class Suffixes {
+
+  public static void main(String[] args) {
+    Node c = new Node(41);
+    TreeNode m = new TreeNode("m", 7);
+    System.out.println(c.next());
+    System.out.println(m.next());
+    System.out.println(Node.scale(3));
+    System.out.println(TreeNode.scale(3));
+  }
+
+}
@@ -0,0 +1,34 @@
+public class Trees {
+
+  public static void main(String[] args) {
+    int total = 0;
+    Tree longLived = Tree.create(16);
+    for (int i = 0; i < 40; i++) {
+      Tree t = Tree.create(14);
+      total = total + t.check();
+    }
+    total = total + longLived.check();
+    System.out.println(total);
+  }
+
+}
+
+class Tree {
+  public Tree left;
+  public Tree right;
+
+  public static Tree create(int depth) {
+    Tree t = new Tree();
+    if (depth > 0) {
+      t.left = create(depth - 1);
+      t.right = create(depth - 1);
+    }
+    return t;
+  }
+
+  public int check() {
+    if (null == left)
+      return 1;
+    return 1 + left.check() + right.check();
+  }
+}
@@ -0,0 +1,65 @@
+#
+# Helpers shared by the benchmark scripts: running a command while
+# measuring its wall time and peak resident set size.
+#
+# Usage: import benchutil; wrapper = benchutil.build_wrapper(temp)
+#
+
+import os
+import subprocess
+import time
+
+# A wrapper running a command and writing its peak RSS in kilobytes to
+# a file.  The peak the kernel reports for a child includes the image
+# it was forked from, so the programs are forked from this small
+# program, whose own image is about 1 MB, rather than from Python.
+PEAK = r"""
+#include <stdio.h>
+#include <sys/resource.h>
+#include <sys/wait.h>
+#include <unistd.h>
+
+int main(int argc, char** argv) {
+  pid_t pid = fork();
+  if (0 == pid) {
+    execvp(argv[2], argv + 2);
+    _exit(127);
+  }
+  int status;
+  waitpid(pid, &status, 0);
+  struct rusage usage;
+  getrusage(RUSAGE_CHILDREN, &usage);
+  FILE* f = fopen(argv[1], "w");
+  fprintf(f, "%ld\n", usage.ru_maxrss);
+  fclose(f);
+  return WIFEXITED(status) ? WEXITSTATUS(status) : 128 + WTERMSIG(status);
+}
+"""
+
+
+def build_wrapper(temp):
+  """Compiles the wrapper measuring the peak RSS into the directory,
+  returning its path."""
+  source = os.path.join(temp, "peak.cc")
+  with open(source, "w") as f:
+    f.write(PEAK)
+  binary = os.path.join(temp, "peak")
+  subprocess.check_call(["g++", "-O2", source, "-o", binary])
+  return binary
+
+
+def run(command, wrapper, cwd=None):
+  """Runs the command once through the wrapper, returning its output,
+  wall time, and peak RSS in kilobytes.  Raises CalledProcessError if
+  the command fails."""
+  report = wrapper + ".rss"
+  start = time.perf_counter()
+  process = subprocess.Popen([wrapper, report] + command,
+                             stdout=subprocess.PIPE, cwd=cwd)
+  out = process.stdout.read()
+  status = process.wait()
+  elapsed = time.perf_counter() - start
+  if 0 != status:
+    raise subprocess.CalledProcessError(status, command)
+  with open(report) as f:
+    return out, elapsed, int(f.read())
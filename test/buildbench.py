@@ -0,0 +1,183 @@
+#!/usr/bin/env python3
+#
+# Compares clean build times of the translated C++ code: one file per
+# package, one file per class (-splitClasses), and a single unity file
+# with a precompiled header (-unityBuild).
+#
+# Usage: python3 test/buildbench.py [-c classes] [-p packages] [-j jobs]
+#                                   [-O level]
+#
+# The program is a synthetic corpus of classes written to temporary
+# packages.  Each class has a few fields and methods, refers to the
+# class before it, and most extend it, so that the translated headers
+# are realistic.  The script reports the total preprocessed size of the
+# generated headers and sources along with the build time.
+
+import argparse
+import os
+import shutil
+import subprocess
+import sys
+import tempfile
+import time
+
+# The modes: translator flags
+MODES = [
+  ("package", []),
+  ("split", ["-splitClasses"]),
+  ("unity", ["-unityBuild"]),
+]
+
+main = os.path.dirname(os.path.dirname(os.path.abspath(__file__)))
+output = os.path.join(main, "output")
+
+CLASS = """\
+package corpus.p%(pkg)d;
+%(imports)s
+public class C%(i)d%(parent)s {
+  int count%(i)d;
+  String name%(i)d;
+  C%(prev)d prev%(i)d;
+
+  public C%(i)d() {
+    count%(i)d = %(i)d;
+    name%(i)d = "C%(i)d";
+  }
+
+  public int step(int x) {
+    int[] values = new int[4];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = x + i * count%(i)d;
+    }
+    return values[x %% 4];
+  }
+
+  public String describe() {
+    return name%(i)d + ":" + step(count%(i)d);
+  }
+}
+"""
+
+MAIN = """\
+package corpus;
+
+%s
+public class Corpus {
+  public static void main(String[] args) {
+    int total = 0;
+%s
+    System.out.println(total);
+  }
+}
+"""
+
+
+def corpus(path, classes, packages):
+  """Writes the synthetic corpus, returning the main file."""
+  path = os.path.join(path, "corpus")
+  for j in range(packages):
+    os.makedirs(os.path.join(path, "p%d" % j))
+  package = lambda i: i * packages // (classes + 1)
+  with open(os.path.join(path, "p0", "C0.java"), "w") as f:
+    f.write("package corpus.p0;\n\npublic class C0 {\n"
+            "  public int step(int x) { return x; }\n}\n")
+  calls = []
+  for i in range(1, classes + 1):
+    j, prev = package(i), package(i - 1)
+    imports = "\nimport corpus.p%d.C%d;\n" % (prev, i - 1) if j != prev else ""
+    parent = " extends C%d" % (i - 1) if i % 4 else ""
+    with open(os.path.join(path, "p%d" % j, "C%d.java" % i), "w") as f:
+      f.write(CLASS % {"i": i, "prev": i - 1, "pkg": j, "imports": imports,
+                       "parent": parent})
+    calls.append("    total += new C%d().step(%d);" % (i, i))
+  imports = "".join("import corpus.p%d.*;\n" % j for j in range(packages))
+  main_file = os.path.join(path, "Corpus.java")
+  with open(main_file, "w") as f:
+    f.write(MAIN % (imports, "\n".join(calls)))
+  return main_file
+
+
+def clean():
+  for name in os.listdir(output):
+    path = os.path.join(output, name)
+    if os.path.isfile(path) and not name.startswith("."):
+      os.remove(path)
+  include = os.path.join(output, "include")
+  for name in os.listdir(include):
+    if name.endswith(".o") or name.endswith(".d"):
+      os.remove(os.path.join(include, name))
+
+
+def translate(source, flags):
+  clean()
+  cp = os.pathsep.join([os.path.join(main, "classes"),
+                        os.path.join(main, "lib", "xtc.jar")])
+  subprocess.check_call(["java", "-cp", cp, "pcp.Translator",
+                         "-translateJava"] + flags + [source],
+                        cwd=main, stdout=subprocess.DEVNULL)
+
+
+def preprocessed(suffix):
+  """Returns the total size in kilobytes of the preprocessed files with
+  the given suffix in the output directory."""
+  size = 0
+  for name in os.listdir(output):
+    if name.endswith(suffix):
+      size += len(subprocess.check_output(["g++", "-w", "-E", "-x", "c++",
+                                           name], cwd=output))
+  return size // 1024
+
+
+def build(flags, level, jobs):
+  """Builds the translated code from scratch, returning the wall time."""
+  cxxflags = "CXXFLAGS=-w -O" + level
+  start = time.perf_counter()
+  if os.path.exists(os.path.join(output, "Makefile")):
+    subprocess.check_call(["make", "-s", "-j%d" % jobs, cxxflags],
+                          cwd=output)
+  else:
+    sources = [n for n in os.listdir(output) if n.endswith(".cc")]
+    sources += [os.path.join("include", n)
+                for n in os.listdir(os.path.join(output, "include"))
+                if n.endswith(".cc")]
+    subprocess.check_call(["g++", "-w", "-O" + level] + sources +
+                          ["-o", "Corpus"], cwd=output)
+  return time.perf_counter() - start
+
+
+def main_():
+  parser = argparse.ArgumentParser()
+  parser.add_argument("-c", dest="classes", type=int, default=60,
+                      help="classes in the corpus")
+  parser.add_argument("-p", dest="packages", type=int, default=4,
+                      help="packages in the corpus")
+  parser.add_argument("-j", dest="jobs", type=int, default=os.cpu_count(),
+                      help="parallel compiler jobs")
+  parser.add_argument("-O", dest="level", default="0", help="optimization")
+  args = parser.parse_args()
+
+  temp = tempfile.mkdtemp()
+  try:
+    source = corpus(temp, args.classes, args.packages)
+    print("%-8s %8s %12s %12s %10s" % ("mode", "files", "headers (KB)",
+                                         "sources (KB)", "build (s)"))
+    expected = None
+    for name, flags in MODES:
+      translate(source, flags)
+      files = len([n for n in os.listdir(output) if n.endswith(".cc")])
+      headers, sources = preprocessed(".h"), preprocessed(".cc")
+      elapsed = build(flags, args.level, args.jobs)
+      out = subprocess.check_output([os.path.join(output, "Corpus")])
+      if expected is None:
+        expected = out
+      elif out != expected:
+        sys.exit("%s: output differs" % name)
+      print("%-8s %8d %12d %12d %10.2f" % (name, files, headers, sources,
+                                           elapsed))
+  finally:
+    shutil.rmtree(temp)
+    clean()
+
+
+if __name__ == "__main__":
+  main_()
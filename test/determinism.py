@@ -0,0 +1,109 @@
+#!/usr/bin/env python3
+#
+# Checks that translating a program twice writes byte-identical C++
+# code, so that ccache and incremental builds can reuse the objects.
+#
+# Usage: python3 test/determinism.py [-t=-flag ...] [file.java ...]
+#
+# Each program is translated in two separate JVMs.  The second one
+# computes identity hash codes differently, so that any output order
+# depending on the iteration order of a hash table changes between the
+# runs, and writes the packages on several threads, so that the output
+# is also checked against serial mode.  Every generated source and
+# header and the Makefile are compared, and the files that differ are
+# listed.  Flags given with -t are passed to the translator; without
+# them, each program is checked with the default output and with each
+# of the output modes below.  The script exits with status 1 if any
+# output differs.
+
+import argparse
+import os
+import subprocess
+import sys
+
+PROGRAMS = [
+  "xtc/oop/Test.java", "Magic.java", "Demo.java", "Expressions.java",
+  "Statements.java", "CommandLineArguments.java", "DefaultValues.java",
+  "MethodChaining.java", "Naming.java", "Packages.java", "Constructors.java",
+  "inheritance/Super.java", "finale/Final.java", "ConstructorOverloading.java",
+  "OccurrencesInArray.java", "Test.java", "Cycles.java", "Trees.java",
+  "Matrix.java", "ArrayCopy.java", "StringKeys.java", "Suffixes.java",
+  "StaticOrder.java", "LibraryShadow.java",
+]
+
+# The modes: translator flags
+MODES = [
+  [],
+  ["-splitClasses"],
+  ["-unityBuild"],
+  ["-loadOnDemand", "-eliminateDeadCode"],
+]
+
+# The JVM options and translator flags of the second run
+PERTURB = ["-XX:+UnlockExperimentalVMOptions", "-XX:hashCode=2"]
+PARALLEL = ["-writeJobs", "4"]
+
+main = os.path.dirname(os.path.dirname(os.path.abspath(__file__)))
+test = os.path.join(main, "test")
+output = os.path.join(main, "output")
+
+
+def generated():
+  return sorted(n for n in os.listdir(output)
+                if n.endswith(".cc") or n.endswith(".h") or n == "Makefile")
+
+
+def translate(source, flags, options):
+  """Translates the program, returning the contents of the generated
+  files by name."""
+  for name in generated():
+    os.remove(os.path.join(output, name))
+  cp = os.pathsep.join([os.path.join(main, "classes"),
+                        os.path.join(main, "lib", "xtc.jar")])
+  subprocess.check_call(["java"] + options + ["-cp", cp, "pcp.Translator"] +
+                        flags + ["-translateJava", source],
+                        cwd=main, stdout=subprocess.DEVNULL)
+  files = {}
+  for name in generated():
+    with open(os.path.join(output, name), "rb") as f:
+      files[name] = f.read()
+  return files
+
+
+def check(source, flags):
+  """Translates the program twice, returning the names of the files
+  that differ."""
+  first = translate(source, flags, [])
+  second = translate(source, flags + PARALLEL, PERTURB)
+  return sorted(n for n in set(first) | set(second)
+                if first.get(n) != second.get(n))
+
+
+def main_():
+  parser = argparse.ArgumentParser()
+  parser.add_argument("-t", dest="flags", action="append",
+                      help="flag passed to the translator")
+  parser.add_argument("files", nargs="*", default=PROGRAMS)
+  args = parser.parse_args()
+
+  modes = [args.flags] if args.flags else MODES
+  failed = False
+  for flags in modes:
+    print("== %s" % (" ".join(flags) or "default"))
+    for f in args.files:
+      try:
+        differ = check(os.path.join(test, f), flags)
+      except subprocess.CalledProcessError:
+        print("%-28s translation failed" % f)
+        failed = True
+        continue
+      if differ:
+        print("%-28s differs: %s" % (f, " ".join(differ)))
+        failed = True
+      else:
+        print("%-28s same" % f)
+  sys.exit(1 if failed else 0)
+
+
+if __name__ == "__main__":
+  main_()
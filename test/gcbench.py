@@ -0,0 +1,93 @@
+#!/usr/bin/env python3
+#
+# Compares the memory management backends of the C++ runtime on
+# allocation-heavy programs: plain reference counting, reference
+# counting with the cycle collector, and the mark-sweep collector.
+#
+# Usage: python3 test/gcbench.py [-n runs] [-O level] [file.java ...]
+#
+# Each program is translated and compiled once per backend, then run
+# several times.  The script reports the best wall time and the peak
+# resident set size, and checks that all backends print the same output.
+
+import argparse
+import os
+import shutil
+import subprocess
+import sys
+import tempfile
+
+import benchutil
+
+# The backends: translator flags and compiler flags
+BACKENDS = [
+  ("refcount", [], []),
+  ("cycles", ["-collectCycles"], ["-DPCP_CYCLE_COLLECTOR"]),
+  ("marksweep", ["-markSweep"], ["-DPCP_MARK_SWEEP"]),
+]
+
+PROGRAMS = ["Trees.java", "Cycles.java"]
+
+main = os.path.dirname(os.path.dirname(os.path.abspath(__file__)))
+test = os.path.join(main, "test")
+output = os.path.join(main, "output")
+
+
+def translate(source, flags):
+  for name in os.listdir(output):
+    if name.endswith(".cc") or name.endswith(".h"):
+      os.remove(os.path.join(output, name))
+  cp = os.pathsep.join([os.path.join(main, "classes"),
+                        os.path.join(main, "lib", "xtc.jar")])
+  subprocess.check_call(["java", "-cp", cp, "pcp.Translator",
+                         "-translateJava"] + flags + [source],
+                        cwd=main, stdout=subprocess.DEVNULL)
+
+
+def compile(binary, flags, level):
+  sources = [n for n in os.listdir(output) if n.endswith(".cc")]
+  sources += [os.path.join("include", n)
+              for n in os.listdir(os.path.join(output, "include"))
+              if n.endswith(".cc")]
+  subprocess.check_call(["g++", "-w", "-O" + level] + flags +
+                        sources + ["-o", binary], cwd=output)
+
+
+def main_():
+  parser = argparse.ArgumentParser()
+  parser.add_argument("-n", type=int, default=5, help="runs per backend")
+  parser.add_argument("-O", dest="level", default="2", help="optimization")
+  parser.add_argument("files", nargs="*", default=PROGRAMS)
+  args = parser.parse_args()
+
+  temp = tempfile.mkdtemp()
+  try:
+    wrapper = benchutil.build_wrapper(temp)
+    print("%-14s %-10s %10s %12s" % ("program", "backend", "time (s)",
+                                      "peak (KB)"))
+    for f in args.files:
+      source = os.path.join(test, f)
+      expected = None
+      for name, tflags, cflags in BACKENDS:
+        binary = os.path.join(temp, name)
+        translate(source, tflags)
+        compile(binary, cflags, args.level)
+        best, peak = None, 0
+        for _ in range(args.n):
+          try:
+            out, elapsed, rss = benchutil.run([binary], wrapper)
+          except subprocess.CalledProcessError as e:
+            sys.exit("%s failed with status %d" % (binary, e.returncode))
+          if expected is None:
+            expected = out
+          elif out != expected:
+            sys.exit("%s: %s output differs" % (f, name))
+          best = elapsed if best is None else min(best, elapsed)
+          peak = max(peak, rss)
+        print("%-14s %-10s %10.3f %12d" % (f, name, best, peak))
+  finally:
+    shutil.rmtree(temp)
+
+
+if __name__ == "__main__":
+  main_()
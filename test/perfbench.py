@@ -0,0 +1,143 @@
+#!/usr/bin/env python3
+#
+# Compares the translated C++ programs with the original Java programs
+# running on the JVM.
+#
+# Usage: python3 test/perfbench.py [-n runs] [-O level] [-o file.json]
+#                                  [-a arg ...] [file.java ...]
+#
+# Each program is compiled with javac, translated, and compiled with g++
+# at the given optimization level, then both versions are run several
+# times.  The script reports the best and mean wall time and the peak
+# resident set size of each, the ratio of the best C++ time to the best
+# Java time, and whether both print the same output.  The results are
+# also written as JSON, to standard output unless a file is given.
+# Arguments given with -a are passed to every program; the benchmark
+# programs take their problem size as the first argument.
+
+import argparse
+import json
+import os
+import shutil
+import subprocess
+import sys
+import tempfile
+
+import benchutil
+
+PROGRAMS = [
+  "xtc/oop/Test.java", "Magic.java", "Demo.java", "Statements.java",
+  "CommandLineArguments.java", "MethodChaining.java", "Naming.java",
+  "Packages.java", "Constructors.java", "ConstructorOverloading.java",
+  "OccurrencesInArray.java", "Test.java", "Cycles.java", "Trees.java",
+  "Matrix.java", "ArrayCopy.java", "StringKeys.java", "Suffixes.java",
+  "StaticOrder.java", "BinaryTrees.java", "Sieve.java", "Fannkuch.java",
+  "NBody.java", "LibraryShadow.java",
+]
+
+main = os.path.dirname(os.path.dirname(os.path.abspath(__file__)))
+test = os.path.join(main, "test")
+output = os.path.join(main, "output")
+
+
+def translate(source):
+  for name in os.listdir(output):
+    if name.endswith(".cc") or name.endswith(".h"):
+      os.remove(os.path.join(output, name))
+  cp = os.pathsep.join([os.path.join(main, "classes"),
+                        os.path.join(main, "lib", "xtc.jar")])
+  subprocess.check_call(["java", "-cp", cp, "pcp.Translator",
+                         "-translateJava", source],
+                        cwd=main, stdout=subprocess.DEVNULL)
+
+
+def compile(binary, level):
+  sources = [n for n in os.listdir(output) if n.endswith(".cc")]
+  sources += [os.path.join("include", n)
+              for n in os.listdir(os.path.join(output, "include"))
+              if n.endswith(".cc")]
+  subprocess.check_call(["g++", "-w", "-O" + level] + sources +
+                        ["-o", binary], cwd=output)
+
+
+def measure(command, cwd, runs, wrapper):
+  """Runs the command several times, returning its output and a summary
+  of the wall times and peak RSS."""
+  times, peak, out = [], 0, None
+  for _ in range(runs):
+    out, elapsed, rss = benchutil.run(command, wrapper, cwd)
+    times.append(elapsed)
+    peak = max(peak, rss)
+  return out, {"best": min(times), "mean": sum(times) / len(times),
+               "peak": peak}
+
+
+def bench(f, temp, args, wrapper):
+  """Benchmarks one program, returning its results."""
+  source = os.path.join(test, f)
+  name = os.path.splitext(f)[0]
+  classes = os.path.join(temp, "java", name)
+  binary = os.path.join(temp, os.path.basename(name))
+  result = {"program": f}
+  try:
+    subprocess.check_call(["javac", "-nowarn", "-sourcepath", test,
+                           "-d", classes, source],
+                          stdout=subprocess.DEVNULL, stderr=subprocess.DEVNULL)
+    translate(source)
+    compile(binary, args.level)
+    expected, result["java"] = measure(["java", "-cp", classes,
+                                        name.replace("/", ".")] + args.args,
+                                       test, args.n, wrapper)
+    out, result["cpp"] = measure([binary] + args.args, test, args.n, wrapper)
+  except subprocess.CalledProcessError as e:
+    result["error"] = "%s failed" % os.path.basename(e.cmd[0])
+    return result
+  result["ratio"] = result["cpp"]["best"] / result["java"]["best"]
+  result["same"] = out == expected
+  return result
+
+
+def main_():
+  parser = argparse.ArgumentParser()
+  parser.add_argument("-n", type=int, default=5, help="runs per program")
+  parser.add_argument("-O", dest="level", default="2", help="optimization")
+  parser.add_argument("-o", dest="json", help="file to write JSON to")
+  parser.add_argument("-a", dest="args", action="append", default=[],
+                      help="argument passed to the programs")
+  parser.add_argument("files", nargs="*", default=PROGRAMS)
+  args = parser.parse_args()
+
+  temp = tempfile.mkdtemp()
+  results = []
+  try:
+    wrapper = benchutil.build_wrapper(temp)
+    print("%-28s %10s %10s %10s %10s %7s %12s %12s %5s" %
+          ("program", "java (s)", "mean", "c++ (s)", "mean", "ratio",
+           "java (KB)", "c++ (KB)", "same"))
+    for f in args.files:
+      r = bench(f, temp, args, wrapper)
+      results.append(r)
+      if "error" in r:
+        print("%-28s %s" % (f, r["error"]))
+        continue
+      print("%-28s %10.3f %10.3f %10.3f %10.3f %7.2f %12d %12d %5s" %
+            (f, r["java"]["best"], r["java"]["mean"], r["cpp"]["best"],
+             r["cpp"]["mean"], r["ratio"], r["java"]["peak"],
+             r["cpp"]["peak"], "yes" if r["same"] else "no"))
+  finally:
+    shutil.rmtree(temp)
+
+  report = {"runs": args.n, "level": args.level, "args": args.args,
+            "results": results}
+  if args.json:
+    with open(args.json, "w") as f:
+      json.dump(report, f, indent=2)
+      f.write("\n")
+  else:
+    print()
+    json.dump(report, sys.stdout, indent=2)
+    print()
+
+
+if __name__ == "__main__":
+  main_()